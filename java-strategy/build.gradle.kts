@@ -29,15 +29,46 @@ dependencies {
         exclude(group = "org.slf4j", module = "slf4j-log4j12")
         exclude(group = "org.slf4j", module = "slf4j-reload4j")
     }
+    implementation("org.apache.arrow:arrow-vector:15.0.2")
+    runtimeOnly("org.apache.arrow:arrow-memory-unsafe:15.0.2")
 
     testImplementation("org.junit.jupiter:junit-jupiter:5.10.3")
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
+// Arrow のメモリ管理が java.nio の内部にアクセスするため
+val arrowJvmArgs = listOf("--add-opens=java.base/java.nio=ALL-UNNAMED")
+
 application {
     mainClass.set("com.masayukinakano.autobrowsing.strategy.StrategyServer")
+    applicationDefaultJvmArgs = arrowJvmArgs
+}
+
+tasks.register<JavaExec>("replay") {
+    group = "application"
+    description = "Replays captured or synthetic StrategyServer sessions and reports throughput/latency."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("com.masayukinakano.autobrowsing.strategy.SessionReplay")
+    jvmArgs(arrowJvmArgs)
+}
+
+tasks.register<JavaExec>("backfill") {
+    group = "application"
+    description = "Imports links from the saved raw article archive into the partitioned link Parquet store."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("com.masayukinakano.autobrowsing.strategy.ArchiveBackfill")
+    jvmArgs(arrowJvmArgs)
+}
+
+tasks.register<JavaExec>("importArticles") {
+    group = "application"
+    description = "Imports article HTML/JSON files saved by the app into the deduplicated article blob store."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("com.masayukinakano.autobrowsing.strategy.ArticleImport")
+    jvmArgs(arrowJvmArgs)
 }
 
 tasks.test {
     useJUnitPlatform()
+    jvmArgs(arrowJvmArgs)
 }
@@ -0,0 +1,302 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// 保存済み記事アーカイブからリンクを取り込み、ライブ取得と同じ重複排除・Parquet 経路へ流す
+public final class ArchiveBackfill {
+    public static final String COMMAND = "backfill";
+
+    private static final int SPLIT_THRESHOLD = 16;
+    private static final long DAY_MILLIS = 24 * 60 * 60 * 1000L;
+
+    private final LinkParquetWriter writer;
+    private final ArchiveLinkExtractor extractor;
+    private final String siteId;
+    private final Path root;
+    private final Path checkpointFile;
+    private final int chunkFiles;
+    private final int batchLinks;
+
+    private final AtomicLong filesDone = new AtomicLong();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong linksFound = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private long linksSubmitted;
+
+    public ArchiveBackfill(LinkParquetWriter writer, String siteId, Path root, Path checkpointFile,
+                           int chunkFiles, int batchLinks) {
+        this.writer = writer;
+        this.extractor = ArchiveLinkExtractor.forSite(siteId, new JsonFactory());
+        if (extractor == null) {
+            throw new IllegalArgumentException("no archive extractor for site: " + siteId);
+        }
+        this.siteId = siteId;
+        this.root = root;
+        this.checkpointFile = checkpointFile;
+        this.chunkFiles = chunkFiles;
+        this.batchLinks = batchLinks;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (hasFlag(args, "--help")) {
+            printUsage();
+            return;
+        }
+        FlightRecording.startFromArguments(args);
+        String siteId = option(args, "--site", "bloomberg");
+        if (ArchiveLinkExtractor.forSite(siteId, new JsonFactory()) == null) {
+            System.err.println("[backfill] unsupported site: " + siteId + " (supported: bloomberg)");
+            return;
+        }
+        Path root = Path.of(option(args, "--root", System.getProperty("user.home")
+            + "/Documents/MiYabi/pipeline/staging/raw/" + siteId)).toAbsolutePath();
+        int threads = Integer.parseInt(option(args, "--threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        int chunkFiles = Integer.parseInt(option(args, "--chunk-files", "2000"));
+        int batchLinks = Integer.parseInt(option(args, "--batch-links", "5000"));
+        if (!Files.isDirectory(root)) {
+            System.err.println("[backfill] archive directory not found: " + root);
+            return;
+        }
+
+        String output = option(args, "--output", null);
+        LinkParquetWriter writer = output != null
+            ? LinkParquetWriter.open(Path.of(output), System.getenv("AUTO_BROWSING_LINK_SINKS"))
+            : LinkParquetWriter.openDefault();
+        Path checkpoint = writer.getOutputDir().resolve("_backfill").resolve(siteId + ".checkpoint");
+        if (hasFlag(args, "--restart")) {
+            Files.deleteIfExists(checkpoint);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            new ArchiveBackfill(writer, siteId, root, checkpoint, chunkFiles, batchLinks).run(pool);
+        } finally {
+            pool.shutdown();
+            writer.close();
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("usage: StrategyServer backfill [--root DIR] [--site bloomberg] [--output DIR] [--threads N]"
+            + " [--chunk-files N] [--batch-links N] [--restart] [--jfr[=PATH]]");
+    }
+
+    public void run(ForkJoinPool pool) throws IOException {
+        Set<String> done = readCheckpoint();
+        List<Path> pending;
+        try (Stream<Path> files = Files.walk(root)) {
+            pending = files
+                .filter(Files::isRegularFile)
+                .filter(ArchiveBackfill::isArchiveFile)
+                .filter(file -> !done.contains(relative(file)))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        System.err.println("[backfill] " + root + ": " + pending.size() + " file(s) to import, " + done.size()
+            + " already in checkpoint, " + pool.getParallelism() + " thread(s)");
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        long started = System.nanoTime();
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "backfill-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progress.scheduleAtFixedRate(() -> report(pending.size(), started), 2, 2, TimeUnit.SECONDS);
+        try {
+            for (int from = 0; from < pending.size(); from += chunkFiles) {
+                List<Path> chunk = pending.subList(from, Math.min(pending.size(), from + chunkFiles));
+                Map<String, LinkSnapshot> links = pool.invoke(new ExtractTask(chunk, 0, chunk.size()));
+                if (!submit(links)) {
+                    String holder = writer.leaseHolder(siteId);
+                    System.err.println("[backfill] stopped: " + (holder != null
+                        ? "site " + siteId + " is leased by " + holder
+                        : "links could not be persisted (see log above)") + ", rerun to resume from the checkpoint");
+                    return;
+                }
+                appendCheckpoint(chunk);
+            }
+        } finally {
+            progress.shutdownNow();
+        }
+        report(pending.size(), started);
+        System.err.println("[backfill] done: submitted " + linksSubmitted + " unique links from " + filesDone.get()
+            + " file(s), " + failures.get() + " failure(s)");
+    }
+
+    private static boolean isArchiveFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.endsWith(".html") || (name.endsWith(".json") && !name.endsWith(".parsed.json"));
+    }
+
+    // 同じ日付パーティションのリンクがまとまって届くよう、フィード→公開日→href の順に並べて大きなバッチで渡す
+    private boolean submit(Map<String, LinkSnapshot> links) {
+        Map<String, List<LinkSnapshot>> byFeed = new TreeMap<>();
+        for (LinkSnapshot link : links.values()) {
+            byFeed.computeIfAbsent(feedUrl(link.getHref()), key -> new ArrayList<>()).add(link);
+        }
+        Comparator<LinkSnapshot> order = Comparator
+            .comparingLong(ArchiveBackfill::publishedDay)
+            .thenComparing(LinkSnapshot::getHref);
+        for (Map.Entry<String, List<LinkSnapshot>> feed : byFeed.entrySet()) {
+            List<LinkSnapshot> sorted = feed.getValue();
+            sorted.sort(order);
+            for (int from = 0; from < sorted.size(); from += batchLinks) {
+                List<LinkSnapshot> batch = sorted.subList(from, Math.min(sorted.size(), from + batchLinks));
+                if (!writer.importLinks(siteId, feed.getKey(), new ArrayList<>(batch))) {
+                    return false;
+                }
+                linksSubmitted += batch.size();
+            }
+        }
+        return true;
+    }
+
+    private static long publishedDay(LinkSnapshot link) {
+        long millis = link.getPublishedAtMillis();
+        return millis == PublishedAtParser.UNKNOWN ? Long.MAX_VALUE : Math.floorDiv(millis, DAY_MILLIS);
+    }
+
+    // フィードキーは LinkParquetWriter と同じくパスの先頭セグメントで決まる（例: /news/articles/... → bloomberg_news）。
+    // ライブ取得のキー（ページ URL 由来）とは一致しないが、書いたファイルはアーカイブ由来としてライブ側の重複排除にも使われる
+    private static String feedUrl(String href) {
+        URI uri = URI.create(href);
+        String path = uri.getPath() == null ? "" : uri.getPath();
+        int start = path.startsWith("/") ? 1 : 0;
+        int end = path.indexOf('/', start);
+        String segment = end < 0 ? path.substring(start) : path.substring(start, end);
+        return uri.getScheme() + "://" + uri.getHost() + "/" + segment;
+    }
+
+    private Map<String, LinkSnapshot> extract(Path file) {
+        // ファイル全体を文字列にせず、固定長のバッファで読みながら抽出する
+        try (InputStream in = Files.newInputStream(file)) {
+            Map<String, LinkSnapshot> links = file.getFileName().toString().endsWith(".html")
+                ? extractor.extractHtml(new InputStreamReader(in, StandardCharsets.UTF_8))
+                : extractor.extractJsonDocument(in);
+            bytesRead.addAndGet(Files.size(file));
+            linksFound.addAndGet(links.size());
+            return links;
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            System.err.println("[backfill] failed to read " + file + ": " + e.getMessage());
+            return new HashMap<>();
+        } finally {
+            filesDone.incrementAndGet();
+        }
+    }
+
+    private static Map<String, LinkSnapshot> merge(Map<String, LinkSnapshot> target, Map<String, LinkSnapshot> source) {
+        for (LinkSnapshot link : source.values()) {
+            LinkSnapshot existing = target.get(link.getHref());
+            if (existing == null || (existing.getPublishedAt() == null && link.getPublishedAt() != null)) {
+                target.put(link.getHref(), link);
+            }
+        }
+        return target;
+    }
+
+    private void report(int total, long startedNanos) {
+        double seconds = Math.max(1e-3, (System.nanoTime() - startedNanos) / 1e9);
+        long files = filesDone.get();
+        double filesPerSecond = files / seconds;
+        long remaining = total - files;
+        System.err.printf("[backfill] %d/%d files (%.1f%%), %.1f MB read, %d links found, %.0f files/s, eta %.0fs%n",
+            files, total, 100.0 * files / total, bytesRead.get() / (1024.0 * 1024), linksFound.get(), filesPerSecond,
+            filesPerSecond == 0 ? 0 : remaining / filesPerSecond);
+    }
+
+    private Set<String> readCheckpoint() throws IOException {
+        Set<String> done = new HashSet<>();
+        if (Files.exists(checkpointFile)) {
+            for (String line : Files.readAllLines(checkpointFile, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    done.add(line.trim());
+                }
+            }
+        }
+        return done;
+    }
+
+    // チャンクのリンクを書き終えてから記録する。途中で落ちても再実行分は重複排除で吸収される
+    private void appendCheckpoint(List<Path> chunk) throws IOException {
+        Files.createDirectories(checkpointFile.getParent());
+        StringBuilder lines = new StringBuilder();
+        for (Path file : chunk) {
+            lines.append(relative(file)).append('\n');
+        }
+        Files.writeString(checkpointFile, lines, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private String relative(Path file) {
+        return root.relativize(file).toString().replace('\\', '/');
+    }
+
+    private final class ExtractTask extends RecursiveTask<Map<String, LinkSnapshot>> {
+        private final List<Path> files;
+        private final int from;
+        private final int to;
+
+        private ExtractTask(List<Path> files, int from, int to) {
+            this.files = files;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Map<String, LinkSnapshot> compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                Map<String, LinkSnapshot> links = new HashMap<>();
+                for (int i = from; i < to; i++) {
+                    merge(links, extract(files.get(i)));
+                }
+                return links;
+            }
+            int middle = (from + to) >>> 1;
+            ExtractTask left = new ExtractTask(files, from, middle);
+            left.fork();
+            Map<String, LinkSnapshot> right = new ExtractTask(files, middle, to).compute();
+            return merge(left.join(), right);
+        }
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (name.equals(args[i])) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    private static boolean hasFlag(String[] args, String name) {
+        return Arrays.asList(args).contains(name);
+    }
+}
@@ -0,0 +1,455 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// 保存済み HTML / 解析済み JSON から記事リンクを取り出す。DOM や正規表現は使わず前方への一回走査で済ませる
+final class ArchiveLinkExtractor {
+    private static final String NEXT_DATA_ID = "id=\"__NEXT_DATA__\"";
+    private static final String SCRIPT_END = "</script>";
+    private static final int MAX_ANCHOR_TEXT = 512;
+    private static final int MAX_TAG_LENGTH = 8192;
+    private static final int MAX_ENTITY_LENGTH = 8;
+
+    private final JsonFactory jsonFactory;
+    private final URI siteRoot;
+    private final String siteDomain;
+    private final List<String> articlePathMarkers;
+
+    ArchiveLinkExtractor(JsonFactory jsonFactory, String siteRoot, List<String> articlePathMarkers) {
+        this.jsonFactory = jsonFactory;
+        this.siteRoot = URI.create(siteRoot);
+        this.siteDomain = this.siteRoot.getHost().replaceFirst("^www\\.", "");
+        this.articlePathMarkers = articlePathMarkers;
+    }
+
+    static ArchiveLinkExtractor bloomberg(JsonFactory jsonFactory) {
+        return new ArchiveLinkExtractor(jsonFactory, "https://www.bloomberg.com/",
+            List.of("/news/articles/", "/news/features/", "/news/newsletters/", "/opinion/articles/", "/features/"));
+    }
+
+    // アーカイブの取り込みに対応しているサイト。未対応なら null
+    static ArchiveLinkExtractor forSite(String siteId, JsonFactory jsonFactory) {
+        switch (siteId) {
+            case "bloomberg":
+                return bloomberg(jsonFactory);
+            default:
+                return null;
+        }
+    }
+
+    Map<String, LinkSnapshot> extractHtml(String html) {
+        try {
+            return extractHtml(new StringReader(html));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // __NEXT_DATA__ の見出し・公開日時を優先し、足りない分をアンカーから補う。
+    // ファイル全体を文字列にせず前から一度だけ読み、__NEXT_DATA__ は </script> までを Jackson に直接流す
+    Map<String, LinkSnapshot> extractHtml(Reader html) throws IOException {
+        Map<String, LinkSnapshot> stories = new LinkedHashMap<>();
+        Map<String, LinkSnapshot> anchors = new LinkedHashMap<>();
+        CharSource source = new CharSource(html);
+        boolean nextDataSeen = false;
+        int c;
+        while ((c = source.next()) >= 0) {
+            if (c != '<') {
+                continue;
+            }
+            String tag = readTag(source);
+            if (tag == null) {
+                break;
+            }
+            if (isAnchor(tag)) {
+                if (!readAnchor(source, tag, anchors)) {
+                    break;
+                }
+            } else if (!nextDataSeen && tag.contains(NEXT_DATA_ID)) {
+                nextDataSeen = true;
+                ScriptReader script = new ScriptReader(source);
+                extractJson(jsonFactory.createParser(new EntityReader(script)), stories);
+                script.drain();
+            }
+        }
+        for (LinkSnapshot anchor : anchors.values()) {
+            stories.putIfAbsent(anchor.getHref(), anchor);
+        }
+        return stories;
+    }
+
+    Map<String, LinkSnapshot> extractJsonDocument(String json) {
+        try {
+            return extractJsonDocument(jsonFactory.createParser(json));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    Map<String, LinkSnapshot> extractJsonDocument(InputStream json) throws IOException {
+        return extractJsonDocument(jsonFactory.createParser(json));
+    }
+
+    private Map<String, LinkSnapshot> extractJsonDocument(JsonParser parser) throws IOException {
+        Map<String, LinkSnapshot> links = new LinkedHashMap<>();
+        extractJson(parser, links);
+        return links;
+    }
+
+    // url と headline（なければ title）を同じ階層に持つオブジェクトを記事とみなす。
+    // 壊れた JSON はそこまでの記事だけを残して false を返し、読み込み自体の失敗は呼び出し側へ投げる
+    private boolean extractJson(JsonParser parser, Map<String, LinkSnapshot> links) throws IOException {
+        Deque<ObjectFrame> frames = new ArrayDeque<>();
+        try (parser) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                switch (token) {
+                    case START_OBJECT:
+                        frames.push(new ObjectFrame());
+                        break;
+                    case END_OBJECT:
+                        ObjectFrame frame = frames.pop();
+                        String text = frame.headline != null ? frame.headline : frame.title;
+                        if (frame.url != null && text != null) {
+                            offer(links, frame.url, text, frame.publishedAt);
+                        }
+                        break;
+                    case VALUE_STRING:
+                        if (!frames.isEmpty() && parser.currentName() != null) {
+                            frames.peek().set(parser.currentName(), parser.getText());
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            return true;
+        } catch (JsonProcessingException | RuntimeException e) {
+            return false;
+        }
+    }
+
+    // '<' の直後から '>' までを返す。途中で '<' が来たらそこを新しいタグの始まりとみなす。長すぎる分は捨てる
+    private static String readTag(CharSource source) throws IOException {
+        StringBuilder tag = new StringBuilder();
+        int c;
+        while ((c = source.next()) >= 0) {
+            if (c == '>') {
+                return tag.toString();
+            }
+            if (c == '<') {
+                tag.setLength(0);
+            } else if (tag.length() < MAX_TAG_LENGTH) {
+                tag.append((char) c);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isAnchor(String tag) {
+        if (tag.length() < 2 || tag.charAt(0) != 'a') {
+            return false;
+        }
+        char next = tag.charAt(1);
+        return next == ' ' || next == '\n' || next == '\t' || next == '\r';
+    }
+
+    // </a> までの本文から内側のタグを落とし、連続する空白を 1 つにまとめる。閉じタグがないまま終われば false
+    private boolean readAnchor(CharSource source, String tag, Map<String, LinkSnapshot> links) throws IOException {
+        StringBuilder text = new StringBuilder();
+        boolean pendingSpace = false;
+        int c;
+        while ((c = source.next()) >= 0) {
+            if (c == '<') {
+                String inner = readTag(source);
+                if (inner == null) {
+                    return false;
+                }
+                if ("/a".equals(inner)) {
+                    String href = attribute(tag, "href=");
+                    if (href != null) {
+                        offer(links, unescapeEntities(href), unescapeEntities(text.toString()), null);
+                    }
+                    return true;
+                }
+                pendingSpace = true;
+            } else if (Character.isWhitespace(c)) {
+                pendingSpace = true;
+            } else if (text.length() < MAX_ANCHOR_TEXT) {
+                if (pendingSpace && text.length() > 0) {
+                    text.append(' ');
+                }
+                pendingSpace = false;
+                text.append((char) c);
+            }
+        }
+        return false;
+    }
+
+    private static String attribute(String tag, String name) {
+        int index = tag.indexOf(name);
+        if (index < 0) {
+            return null;
+        }
+        int valueStart = index + name.length();
+        if (valueStart >= tag.length()) {
+            return null;
+        }
+        char quote = tag.charAt(valueStart);
+        if (quote != '"' && quote != '\'') {
+            return null;
+        }
+        int valueEnd = tag.indexOf(quote, valueStart + 1);
+        return valueEnd < 0 ? null : tag.substring(valueStart + 1, valueEnd);
+    }
+
+    private void offer(Map<String, LinkSnapshot> links, String rawUrl, String text, String publishedAt) {
+        String href = articleUrl(rawUrl);
+        if (href == null || text == null || text.isBlank()) {
+            return;
+        }
+        LinkSnapshot existing = links.get(href);
+        if (existing == null || (existing.getPublishedAt() == null && publishedAt != null)) {
+            links.put(href, new LinkSnapshot(href, text.trim(), publishedAt));
+        }
+    }
+
+    // サイト内の記事 URL だけを残し、クエリとフラグメントを落とした絶対 URL にそろえる
+    private String articleUrl(String rawUrl) {
+        if (rawUrl == null || rawUrl.isBlank()) {
+            return null;
+        }
+        try {
+            URI uri = siteRoot.resolve(rawUrl.trim());
+            String host = uri.getHost();
+            String path = uri.getRawPath();
+            if (host == null || path == null) {
+                return null;
+            }
+            host = host.toLowerCase(Locale.ROOT);
+            if (!host.equals(siteDomain) && !host.endsWith("." + siteDomain)) {
+                return null;
+            }
+            for (String marker : articlePathMarkers) {
+                if (path.startsWith(marker) && path.length() > marker.length()) {
+                    return "https://" + siteRoot.getHost() + path;
+                }
+            }
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static String unescapeEntities(String value) {
+        if (value.indexOf('&') < 0) {
+            return value;
+        }
+        return value.replace("&quot;", "\"")
+            .replace("&#39;", "'")
+            .replace("&#x27;", "'")
+            .replace("&lt;", "<")
+            .replace("&gt;", ">")
+            .replace("&nbsp;", " ")
+            .replace("&amp;", "&");
+    }
+
+    // 一文字ずつ返す next() から Reader を組み立てる。close しても元の入力は閉じない
+    private abstract static class CharReader extends Reader {
+        abstract int next() throws IOException;
+
+        @Override
+        public int read(char[] target, int offset, int length) throws IOException {
+            int count = 0;
+            while (count < length) {
+                int c = next();
+                if (c < 0) {
+                    break;
+                }
+                target[offset + count++] = (char) c;
+            }
+            return count == 0 && length > 0 ? -1 : count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // 固定長のバッファで読み進める入力。直前の一文字だけ戻せる
+    private static final class CharSource extends CharReader {
+        private final Reader reader;
+        private final char[] buffer = new char[8192];
+        private int position;
+        private int limit;
+
+        private CharSource(Reader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        int next() throws IOException {
+            if (position == limit) {
+                int read = reader.read(buffer, 0, buffer.length);
+                if (read <= 0) {
+                    position = 0;
+                    limit = 0;
+                    return -1;
+                }
+                position = 0;
+                limit = read;
+            }
+            return buffer[position++];
+        }
+
+        private void unread() {
+            position--;
+        }
+    }
+
+    // <script> の本文を </script> の手前まで返す
+    private static final class ScriptReader extends CharReader {
+        private final CharSource source;
+        private final char[] pending = new char[SCRIPT_END.length()];
+        private int pendingStart;
+        private int pendingEnd;
+        private boolean ended;
+
+        private ScriptReader(CharSource source) {
+            this.source = source;
+        }
+
+        @Override
+        int next() throws IOException {
+            if (pendingStart < pendingEnd) {
+                return pending[pendingStart++];
+            }
+            if (ended) {
+                return -1;
+            }
+            int c = source.next();
+            if (c != '<') {
+                ended = c < 0;
+                return c;
+            }
+            // </script> と一致するか確かめ、外れたら読んだ分をそのまま返す
+            pendingStart = 0;
+            pendingEnd = 0;
+            pending[pendingEnd++] = '<';
+            boolean matched = true;
+            while (matched && pendingEnd < SCRIPT_END.length()) {
+                int d = source.next();
+                if (d < 0) {
+                    ended = true;
+                    matched = false;
+                } else if (d == SCRIPT_END.charAt(pendingEnd)) {
+                    pending[pendingEnd++] = (char) d;
+                } else {
+                    matched = false;
+                    if (d == '<') {
+                        source.unread();
+                    } else {
+                        pending[pendingEnd++] = (char) d;
+                    }
+                }
+            }
+            if (matched) {
+                ended = true;
+                pendingEnd = 0;
+                return -1;
+            }
+            return pending[pendingStart++];
+        }
+
+        // パーサが途中で止まっても、続きの走査が </script> の後から始まるよう読み捨てる
+        private void drain() throws IOException {
+            while (next() >= 0) {
+                continue;
+            }
+        }
+    }
+
+    // HTML エスケープされた JSON（{&quot;props&quot;:...}）だけを復元する。
+    // 最初に現れるのが '"' か '&' かで判定し、素の JSON に含まれる文字列中の実体参照には触れない
+    private static final class EntityReader extends CharReader {
+        private final CharReader in;
+        private final StringBuilder entity = new StringBuilder(MAX_ENTITY_LENGTH);
+        private String pending = "";
+        private int pendingPosition;
+        private Boolean escaped;
+
+        private EntityReader(CharReader in) {
+            this.in = in;
+        }
+
+        @Override
+        int next() throws IOException {
+            if (pendingPosition < pending.length()) {
+                return pending.charAt(pendingPosition++);
+            }
+            int c = in.next();
+            if (escaped == null && (c == '"' || c == '&')) {
+                escaped = c == '&';
+            }
+            if (c != '&' || !escaped) {
+                return c;
+            }
+            entity.setLength(0);
+            entity.append('&');
+            while (entity.length() < MAX_ENTITY_LENGTH) {
+                int d = in.next();
+                if (d < 0) {
+                    break;
+                }
+                entity.append((char) d);
+                if (d == ';') {
+                    break;
+                }
+            }
+            pending = unescapeEntities(entity.toString());
+            pendingPosition = 0;
+            return pending.charAt(pendingPosition++);
+        }
+    }
+
+    private static final class ObjectFrame {
+        private String url;
+        private String headline;
+        private String title;
+        private String publishedAt;
+
+        private void set(String field, String value) {
+            switch (field) {
+                case "url":
+                    url = value;
+                    break;
+                case "headline":
+                    headline = value;
+                    break;
+                case "title":
+                    title = value;
+                    break;
+                case "publishedAt":
+                    publishedAt = value;
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
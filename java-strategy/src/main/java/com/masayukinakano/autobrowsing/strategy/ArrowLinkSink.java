@@ -0,0 +1,307 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.TimeStampMilliTZVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+// 非圧縮の Arrow IPC ファイル。読み手は mmap してそのまま列を参照できる
+public final class ArrowLinkSink implements LinkSink {
+    public static final String NAME = "arrow";
+
+    private static final String IN_PROGRESS_SUFFIX = ".inprogress";
+    private static final int MAX_BATCHES_PER_FILE = 256;
+    // クロールが止まってからこの時間書き込みがなければファイルを閉じて読み手に見せる
+    private static final long DEFAULT_IDLE_MILLIS = 30_000L;
+    // "ARROW1" と 2 バイトのパディング。その後ろはストリーム形式のメッセージが続く
+    private static final int FILE_MAGIC_BYTES = 8;
+
+    private static final Schema SCHEMA = new Schema(List.of(
+        Field.notNullable("siteId", new ArrowType.Utf8()),
+        Field.nullable("pageUrl", new ArrowType.Utf8()),
+        Field.notNullable("href", new ArrowType.Utf8()),
+        Field.nullable("text", new ArrowType.Utf8()),
+        Field.nullable("publishedAt", new ArrowType.Utf8()),
+        Field.nullable("publishedAtMillis", new ArrowType.Timestamp(TimeUnit.MILLISECOND, "UTC")),
+        Field.notNullable("timestampMillis", new ArrowType.Int(64, true)),
+        Field.nullable("clusterId", new ArrowType.Int(64, true))
+    ));
+
+    private static final DateTimeFormatter PARTITION_DATE = DateTimeFormatter.ISO_LOCAL_DATE.withZone(ZoneOffset.UTC);
+
+    private final Path outputDir;
+    private final long idleMillis;
+    private final BufferAllocator allocator = new RootAllocator();
+    private final Map<String, FeedFile> openFiles = new HashMap<>();
+    private final ScheduledExecutorService idleCloser;
+    private final Thread shutdownHook;
+
+    public ArrowLinkSink(Path outputDir) {
+        this(outputDir, DEFAULT_IDLE_MILLIS);
+    }
+
+    ArrowLinkSink(Path outputDir, long idleMillis) {
+        this.outputDir = outputDir;
+        this.idleMillis = idleMillis;
+        recoverInProgress();
+        this.idleCloser = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "arrow-sink-idle");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(10, idleMillis / 4);
+        idleCloser.scheduleWithFixedDelay(this::finishIdle, period, period, java.util.concurrent.TimeUnit.MILLISECONDS);
+        // アプリはサーバを SIGTERM で止めるため、書きかけのファイルは終了時にも確定させる
+        this.shutdownHook = new Thread(this::finishAll, "arrow-sink-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public synchronized void write(String siteId, String feedKey, List<LinkRecord> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        long now = Instant.now().toEpochMilli();
+        String date = PARTITION_DATE.format(Instant.ofEpochMilli(now));
+        FeedFile file = openFiles.get(feedKey);
+        if (file != null && (!file.date.equals(date) || file.batches >= MAX_BATCHES_PER_FILE)) {
+            openFiles.remove(feedKey);
+            file.finish();
+            file = null;
+        }
+        if (file == null) {
+            Path directory = outputDir.resolve("siteId=" + siteId).resolve("date=" + date);
+            Files.createDirectories(directory);
+            file = new FeedFile(directory.resolve(feedKey + "-" + now + ".arrow"), date);
+            openFiles.put(feedKey, file);
+        }
+        file.writeBatch(records);
+    }
+
+    private synchronized void finishIdle() {
+        long now = Instant.now().toEpochMilli();
+        for (Map.Entry<String, FeedFile> entry : new ArrayList<>(openFiles.entrySet())) {
+            if (now - entry.getValue().lastWriteMillis < idleMillis) {
+                continue;
+            }
+            openFiles.remove(entry.getKey());
+            try {
+                entry.getValue().finish();
+            } catch (IOException e) {
+                System.err.println("[strategy] failed to finish arrow file: " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void finishAll() {
+        for (FeedFile file : new ArrayList<>(openFiles.values())) {
+            try {
+                file.finish();
+            } catch (IOException e) {
+                System.err.println("[strategy] failed to finish arrow file: " + e.getMessage());
+            }
+        }
+        openFiles.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        idleCloser.shutdownNow();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException shuttingDown) {
+            // フック実行中の close では登録解除できない
+        }
+        IOException failure = null;
+        for (FeedFile file : new ArrayList<>(openFiles.values())) {
+            try {
+                file.finish();
+            } catch (IOException e) {
+                failure = e;
+            }
+        }
+        openFiles.clear();
+        allocator.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    // 異常終了で残った .inprogress から読める record batch を取り出し、フッター付きの .arrow として書き直す
+    private void recoverInProgress() {
+        List<Path> leftovers;
+        try (Stream<Path> files = Files.walk(outputDir)) {
+            leftovers = files.filter(file -> file.getFileName().toString().endsWith(".arrow" + IN_PROGRESS_SUFFIX))
+                .collect(Collectors.toList());
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException e) {
+            System.err.println("[strategy] failed to scan arrow output: " + e.getMessage());
+            return;
+        }
+        for (Path inProgress : leftovers) {
+            String name = inProgress.getFileName().toString();
+            Path target = inProgress.resolveSibling(name.substring(0, name.length() - IN_PROGRESS_SUFFIX.length()));
+            try {
+                int batches = salvage(inProgress, target);
+                if (batches > 0) {
+                    Files.delete(inProgress);
+                    System.err.println("[strategy] recovered " + batches + " batches into " + target.getFileName());
+                } else {
+                    Files.deleteIfExists(target);
+                    Files.move(inProgress, inProgress.resolveSibling(name + ".corrupt"), StandardCopyOption.REPLACE_EXISTING);
+                    System.err.println("[strategy] no readable batches in " + name + ", kept as .corrupt");
+                }
+            } catch (IOException e) {
+                System.err.println("[strategy] failed to recover " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private int salvage(Path inProgress, Path target) throws IOException {
+        int batches = 0;
+        try (FileChannel input = FileChannel.open(inProgress, StandardOpenOption.READ)) {
+            if (input.size() <= FILE_MAGIC_BYTES) {
+                return 0;
+            }
+            input.position(FILE_MAGIC_BYTES);
+            try (ArrowStreamReader reader = new ArrowStreamReader(input, allocator)) {
+                VectorSchemaRoot root;
+                try {
+                    root = reader.getVectorSchemaRoot();
+                } catch (IOException | RuntimeException torn) {
+                    return 0;
+                }
+                try (FileChannel output = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING);
+                     ArrowFileWriter writer = new ArrowFileWriter(root, null, output)) {
+                    writer.start();
+                    try {
+                        while (reader.loadNextBatch()) {
+                            writer.writeBatch();
+                            batches++;
+                        }
+                    } catch (IOException | RuntimeException torn) {
+                        // 末尾の書きかけのバッチは捨てる
+                    }
+                    writer.end();
+                }
+            }
+        }
+        return batches;
+    }
+
+    // 書き込み中は .inprogress とし、フッターを書き終えてから .arrow にリネームして読み手に見せる
+    private final class FeedFile {
+        private final Path target;
+        private final Path inProgress;
+        private final String date;
+        private final FileChannel channel;
+        private final VectorSchemaRoot root;
+        private final ArrowFileWriter writer;
+        private int batches;
+        private long lastWriteMillis;
+
+        private FeedFile(Path target, String date) throws IOException {
+            this.target = target;
+            this.inProgress = target.resolveSibling(target.getFileName() + IN_PROGRESS_SUFFIX);
+            this.date = date;
+            this.channel = FileChannel.open(inProgress, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+            this.root = VectorSchemaRoot.create(SCHEMA, allocator);
+            this.writer = new ArrowFileWriter(root, null, channel);
+            writer.start();
+        }
+
+        private void writeBatch(List<LinkRecord> records) throws IOException {
+            root.allocateNew();
+            VarCharVector siteIds = (VarCharVector) root.getVector("siteId");
+            VarCharVector pageUrls = (VarCharVector) root.getVector("pageUrl");
+            VarCharVector hrefs = (VarCharVector) root.getVector("href");
+            VarCharVector texts = (VarCharVector) root.getVector("text");
+            VarCharVector publishedAts = (VarCharVector) root.getVector("publishedAt");
+            TimeStampMilliTZVector publishedAtMillis = (TimeStampMilliTZVector) root.getVector("publishedAtMillis");
+            BigIntVector timestamps = (BigIntVector) root.getVector("timestampMillis");
+            BigIntVector clusterIds = (BigIntVector) root.getVector("clusterId");
+            for (int i = 0; i < records.size(); i++) {
+                LinkRecord record = records.get(i);
+                siteIds.setSafe(i, utf8(record.getSiteId()));
+                setString(pageUrls, i, record.getPageUrl());
+                hrefs.setSafe(i, utf8(record.getHref()));
+                setString(texts, i, record.getText());
+                setString(publishedAts, i, record.getPublishedAt());
+                if (record.getPublishedAtMillis() != null) {
+                    publishedAtMillis.setSafe(i, record.getPublishedAtMillis());
+                } else {
+                    publishedAtMillis.setNull(i);
+                }
+                timestamps.setSafe(i, record.getTimestampMillis());
+                if (record.getClusterId() != null) {
+                    clusterIds.setSafe(i, record.getClusterId());
+                } else {
+                    clusterIds.setNull(i);
+                }
+            }
+            root.setRowCount(records.size());
+            writer.writeBatch();
+            batches++;
+            lastWriteMillis = Instant.now().toEpochMilli();
+        }
+
+        private void finish() throws IOException {
+            try {
+                writer.end();
+            } finally {
+                writer.close();
+                root.close();
+                channel.close();
+            }
+            Files.move(inProgress, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.err.println("[strategy] finished arrow file " + target.getFileName() + " (" + batches + " batches)");
+        }
+    }
+
+    private static void setString(VarCharVector vector, int index, String value) {
+        if (value == null) {
+            vector.setNull(index);
+        } else {
+            vector.setSafe(index, utf8(value));
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+    }
+}
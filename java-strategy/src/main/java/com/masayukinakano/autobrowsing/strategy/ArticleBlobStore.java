@@ -0,0 +1,400 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public final class ArticleBlobStore implements Closeable {
+
+    public interface BlobConsumer {
+        void accept(String hash, byte[] content) throws IOException;
+    }
+
+    private static final int HASH_BYTES = 32;
+    private static final int PACK_HEADER_BYTES = 4 + 4 + 4 + HASH_BYTES;
+    private static final int INDEX_RECORD_BYTES = HASH_BYTES + 4 + 8 + 4 + 4 + 4;
+    private static final long MAX_PACK_BYTES = 512L * 1024 * 1024;
+    private static final int TRAINING_SAMPLES = 16;
+    private static final int DICTIONARY_BYTES = 32 * 1024;
+    private static final Pattern SAFE_FILENAME = Pattern.compile("[^a-zA-Z0-9._-]");
+    private static final HexFormat HEX = HexFormat.of();
+
+    private static final class BlobLocation {
+        private final int pack;
+        private final long offset;
+        private final int storedLength;
+        private final int rawLength;
+        private final int dictionaryId;
+
+        private BlobLocation(int pack, long offset, int storedLength, int rawLength, int dictionaryId) {
+            this.pack = pack;
+            this.offset = offset;
+            this.storedLength = storedLength;
+            this.rawLength = rawLength;
+            this.dictionaryId = dictionaryId;
+        }
+    }
+
+    private static final class SitePacks {
+        private final Path directory;
+        private final Map<String, BlobLocation> blobs = new HashMap<>();
+        private final Map<String, String> articles = new HashMap<>();
+        private final Map<Integer, byte[]> dictionaries = new HashMap<>();
+        private final List<byte[]> trainingSamples = new ArrayList<>();
+        private FileChannel packChannel;
+        private FileChannel indexChannel;
+        private FileChannel articleChannel;
+        private int packNumber;
+        private long packSize;
+        private int activeDictionaryId;
+
+        private SitePacks(Path directory) {
+            this.directory = directory;
+        }
+    }
+
+    private final Path root;
+    private final Map<String, SitePacks> sites = new HashMap<>();
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    private final Inflater inflater = new Inflater();
+    private final MessageDigest digest;
+
+    private ArticleBlobStore(Path root) throws IOException {
+        Objects.requireNonNull(root, "root");
+        // ディレクトリは最初に記事を保存するサイトで作る。機能を使わない起動では何も作らない
+        this.root = root;
+        try {
+            this.digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+        System.err.println("[strategy] article store directory: " + root.toAbsolutePath());
+    }
+
+    public static ArticleBlobStore openDefault() {
+        String override = System.getenv("AUTO_BROWSING_ARTICLE_STORE");
+        Path basePath;
+        if (override != null && !override.trim().isEmpty()) {
+            basePath = Path.of(override.trim()).toAbsolutePath();
+        } else {
+            String links = System.getenv("AUTO_BROWSING_LINKS_OUTPUT");
+            Path linksOutput = links != null && !links.trim().isEmpty() ? Path.of(links.trim()) : Path.of("links-output");
+            basePath = linksOutput.resolve("article-store").toAbsolutePath();
+        }
+        return open(basePath);
+    }
+
+    public static ArticleBlobStore open(Path root) {
+        try {
+            return new ArticleBlobStore(root.toAbsolutePath());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create article store directory", e);
+        }
+    }
+
+    public synchronized String store(String siteId, String articleId, String contentType, byte[] content) throws IOException {
+        SitePacks site = site(siteId);
+        String hash = HEX.formatHex(digest.digest(content));
+        if (!site.blobs.containsKey(hash)) {
+            appendBlob(site, hash, content);
+        }
+        if (articleId != null && !articleId.isBlank()) {
+            String articleKey = articleKey(articleId, contentType);
+            if (!hash.equals(site.articles.put(articleKey, hash))) {
+                byte[] line = (articleKey + "\t" + hash + "\n").getBytes(StandardCharsets.UTF_8);
+                writeFully(site.articleChannel, ByteBuffer.wrap(line));
+            }
+        }
+        return hash;
+    }
+
+    public synchronized byte[] read(String siteId, String hash) throws IOException {
+        SitePacks site = site(siteId);
+        BlobLocation location = site.blobs.get(hash);
+        if (location == null) {
+            return null;
+        }
+        ByteBuffer stored = ByteBuffer.allocate(location.storedLength);
+        try (FileChannel channel = FileChannel.open(packPath(site, location.pack), StandardOpenOption.READ)) {
+            long position = location.offset + PACK_HEADER_BYTES;
+            while (stored.hasRemaining()) {
+                int read = channel.read(stored, position);
+                if (read < 0) {
+                    throw new EOFException("truncated pack record for " + hash);
+                }
+                position += read;
+            }
+        }
+        return inflate(site, stored.array(), location.rawLength, location.dictionaryId);
+    }
+
+    public synchronized byte[] readArticle(String siteId, String articleId, String contentType) throws IOException {
+        String hash = site(siteId).articles.get(articleKey(articleId, contentType));
+        return hash == null ? null : read(siteId, hash);
+    }
+
+    // パックファイルを先頭から順に読むため、一括処理ではランダムアクセスが発生しない
+    public synchronized void forEach(String siteId, BlobConsumer consumer) throws IOException {
+        SitePacks site = site(siteId);
+        for (int pack = 1; pack <= site.packNumber; pack++) {
+            Path packFile = packPath(site, pack);
+            if (!Files.exists(packFile)) {
+                continue;
+            }
+            try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(packFile), 256 * 1024))) {
+                byte[] hash = new byte[HASH_BYTES];
+                while (true) {
+                    int storedLength;
+                    try {
+                        storedLength = input.readInt();
+                    } catch (EOFException end) {
+                        break;
+                    }
+                    if (storedLength < 0 || storedLength > MAX_PACK_BYTES) {
+                        throw new IOException("corrupted pack record header in " + packFile.getFileName());
+                    }
+                    int rawLength = input.readInt();
+                    int dictionaryId = input.readInt();
+                    input.readFully(hash);
+                    byte[] stored = new byte[storedLength];
+                    input.readFully(stored);
+                    String hex = HEX.formatHex(hash);
+                    if (site.blobs.containsKey(hex)) {
+                        consumer.accept(hex, inflate(site, stored, rawLength, dictionaryId));
+                    }
+                }
+            }
+        }
+    }
+
+    private void appendBlob(SitePacks site, String hash, byte[] content) throws IOException {
+        trainIfReady(site, content);
+        byte[] dictionary = site.dictionaries.get(site.activeDictionaryId);
+        byte[] compressed = deflate(content, dictionary);
+
+        if (site.packChannel == null || site.packSize + PACK_HEADER_BYTES + compressed.length > MAX_PACK_BYTES) {
+            rollPack(site);
+        }
+        long offset = site.packSize;
+        ByteBuffer record = ByteBuffer.allocate(PACK_HEADER_BYTES + compressed.length);
+        record.putInt(compressed.length).putInt(content.length).putInt(site.activeDictionaryId);
+        record.put(HEX.parseHex(hash)).put(compressed).flip();
+        writeFully(site.packChannel, record);
+        site.packSize += record.capacity();
+
+        ByteBuffer index = ByteBuffer.allocate(INDEX_RECORD_BYTES);
+        index.put(HEX.parseHex(hash)).putInt(site.packNumber).putLong(offset)
+            .putInt(compressed.length).putInt(content.length).putInt(site.activeDictionaryId).flip();
+        writeFully(site.indexChannel, index);
+
+        site.blobs.put(hash, new BlobLocation(site.packNumber, offset, compressed.length, content.length, site.activeDictionaryId));
+    }
+
+    private void trainIfReady(SitePacks site, byte[] content) throws IOException {
+        if (site.activeDictionaryId != 0 || site.trainingSamples.size() >= TRAINING_SAMPLES) {
+            return;
+        }
+        site.trainingSamples.add(content);
+        if (site.trainingSamples.size() < TRAINING_SAMPLES) {
+            return;
+        }
+        byte[] dictionary = BoilerplateDictionary.train(site.trainingSamples, DICTIONARY_BYTES);
+        site.trainingSamples.clear();
+        if (dictionary.length == 0) {
+            return;
+        }
+        int dictionaryId = site.dictionaries.size() + 1;
+        Files.write(site.directory.resolve(String.format("dict-%04d.bin", dictionaryId)), dictionary);
+        site.dictionaries.put(dictionaryId, dictionary);
+        site.activeDictionaryId = dictionaryId;
+        System.err.println("[strategy] trained " + dictionary.length + " byte dictionary for " + site.directory.getFileName());
+    }
+
+    private byte[] deflate(byte[] content, byte[] dictionary) {
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(content);
+        deflater.finish();
+        byte[] output = new byte[Math.max(64, content.length / 2)];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+            length += deflater.deflate(output, length, output.length - length);
+        }
+        return Arrays.copyOf(output, length);
+    }
+
+    private byte[] inflate(SitePacks site, byte[] stored, int rawLength, int dictionaryId) throws IOException {
+        inflater.reset();
+        inflater.setInput(stored);
+        byte[] output = new byte[rawLength];
+        int length = 0;
+        try {
+            while (length < rawLength) {
+                int inflated = inflater.inflate(output, length, rawLength - length);
+                if (inflated == 0 && inflater.needsDictionary()) {
+                    byte[] dictionary = site.dictionaries.get(dictionaryId);
+                    if (dictionary == null) {
+                        throw new IOException("missing dictionary " + dictionaryId);
+                    }
+                    inflater.setDictionary(dictionary);
+                } else if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("truncated blob");
+                }
+                length += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("corrupted blob: " + e.getMessage(), e);
+        }
+        return output;
+    }
+
+    private SitePacks site(String siteId) throws IOException {
+        String key = sanitizeFileName(siteId == null || siteId.isBlank() ? "default" : siteId);
+        SitePacks site = sites.get(key);
+        if (site == null) {
+            site = loadSite(root.resolve(key));
+            sites.put(key, site);
+        }
+        return site;
+    }
+
+    private SitePacks loadSite(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        SitePacks site = new SitePacks(directory);
+
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "dict-*.bin")) {
+            TreeMap<Integer, byte[]> ordered = new TreeMap<>();
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                ordered.put(Integer.parseInt(name.substring(5, name.length() - 4)), Files.readAllBytes(entry));
+            }
+            site.dictionaries.putAll(ordered);
+            site.activeDictionaryId = ordered.isEmpty() ? 0 : ordered.lastKey();
+        }
+
+        Path indexFile = directory.resolve("blobs.idx");
+        if (Files.exists(indexFile)) {
+            ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+            byte[] hash = new byte[HASH_BYTES];
+            // 書き込み途中で終了した末尾の不完全なレコードは無視する
+            while (index.remaining() >= INDEX_RECORD_BYTES) {
+                index.get(hash);
+                BlobLocation location = new BlobLocation(index.getInt(), index.getLong(), index.getInt(), index.getInt(), index.getInt());
+                site.blobs.put(HEX.formatHex(hash), location);
+                site.packNumber = Math.max(site.packNumber, location.pack);
+            }
+        }
+
+        Path articleFile = directory.resolve("articles.tsv");
+        if (Files.exists(articleFile)) {
+            for (String line : Files.readAllLines(articleFile, StandardCharsets.UTF_8)) {
+                int tab = line.lastIndexOf('\t');
+                if (tab > 0) {
+                    site.articles.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+            }
+        }
+
+        site.indexChannel = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        site.indexChannel.truncate(site.indexChannel.size() - site.indexChannel.size() % INDEX_RECORD_BYTES);
+        site.articleChannel = FileChannel.open(articleFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (site.packNumber > 0) {
+            Path packFile = packPath(site, site.packNumber);
+            site.packChannel = FileChannel.open(packFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            // 索引に載る前に終了した書きかけのレコードを切り落とす。残すと以降に追記したブロブを forEach で読めなくなる
+            long indexedEnd = indexedEnd(site, site.packNumber);
+            if (site.packChannel.size() > indexedEnd) {
+                System.err.println("[strategy] truncating " + (site.packChannel.size() - indexedEnd)
+                    + " unindexed bytes from " + packFile.getFileName());
+                site.packChannel.truncate(indexedEnd);
+            }
+            site.packSize = site.packChannel.size();
+        }
+        System.err.println("[strategy] article store " + directory.getFileName() + ": " + site.blobs.size() + " blobs, "
+            + site.articles.size() + " articles");
+        return site;
+    }
+
+    private static long indexedEnd(SitePacks site, int pack) {
+        long end = 0;
+        for (BlobLocation location : site.blobs.values()) {
+            if (location.pack == pack) {
+                end = Math.max(end, location.offset + PACK_HEADER_BYTES + location.storedLength);
+            }
+        }
+        return end;
+    }
+
+    private void rollPack(SitePacks site) throws IOException {
+        if (site.packChannel != null) {
+            site.packChannel.close();
+        }
+        site.packNumber++;
+        site.packChannel = FileChannel.open(packPath(site, site.packNumber),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        // 新しいパックにはまだ索引済みのレコードがないので、前回の異常終了で残った内容は捨てる
+        site.packChannel.truncate(0);
+        site.packSize = 0;
+    }
+
+    private Path packPath(SitePacks site, int pack) {
+        return site.directory.resolve(String.format("pack-%06d.pack", pack));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String articleKey(String articleId, String contentType) {
+        return articleId + "\t" + (contentType == null || contentType.isBlank() ? "html" : contentType);
+    }
+
+    private static String sanitizeFileName(String value) {
+        String sanitized = SAFE_FILENAME.matcher(value).replaceAll("_");
+        return sanitized.isBlank() ? "default" : sanitized;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (SitePacks site : sites.values()) {
+            for (FileChannel channel : new FileChannel[] {site.packChannel, site.indexChannel, site.articleChannel}) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+        sites.clear();
+        deflater.end();
+        inflater.end();
+    }
+}
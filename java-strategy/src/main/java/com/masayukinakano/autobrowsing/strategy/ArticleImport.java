@@ -0,0 +1,105 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Swift アプリが個別ファイルとして保存した記事（html/<articleId>.html, json/<articleId>.json）を記事ブロブストアへ取り込む。
+// 内容のハッシュで重複排除されるので、何度実行しても同じ記事は増えない
+public final class ArticleImport {
+    public static final String COMMAND = "articles";
+
+    private final ArticleBlobStore store;
+    private final String siteId;
+    private final Path root;
+
+    private long filesImported;
+    private long bytesRead;
+    private long failures;
+
+    public ArticleImport(ArticleBlobStore store, String siteId, Path root) {
+        this.store = store;
+        this.siteId = siteId;
+        this.root = root;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (hasFlag(args, "--help")) {
+            printUsage();
+            return;
+        }
+        FlightRecording.startFromArguments(args);
+        String siteId = option(args, "--site", "bloomberg");
+        Path root = Path.of(option(args, "--root", System.getProperty("user.home")
+            + "/Documents/MiYabi/pipeline/staging/raw/" + siteId)).toAbsolutePath();
+        if (!Files.isDirectory(root)) {
+            System.err.println("[articles] article directory not found: " + root);
+            return;
+        }
+        String storeDir = option(args, "--store", null);
+        ArticleBlobStore store = storeDir != null ? ArticleBlobStore.open(Path.of(storeDir)) : ArticleBlobStore.openDefault();
+        try {
+            new ArticleImport(store, siteId, root).run();
+        } finally {
+            store.close();
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("usage: StrategyServer articles [--root DIR] [--site bloomberg] [--store DIR] [--jfr[=PATH]]");
+    }
+
+    public void run() throws IOException {
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(root)) {
+            files = walk
+                .filter(Files::isRegularFile)
+                .filter(ArticleImport::isArticleFile)
+                .sorted()
+                .collect(Collectors.toList());
+        }
+        System.err.println("[articles] " + root + ": " + files.size() + " file(s) to import into " + siteId);
+        for (Path file : files) {
+            importFile(file);
+        }
+        System.err.printf("[articles] done: imported %d file(s), %.1f MB read, %d failure(s)%n",
+            filesImported, bytesRead / (1024.0 * 1024), failures);
+    }
+
+    private static boolean isArticleFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.indexOf('.') > 0 && (name.endsWith(".html") || name.endsWith(".json"));
+    }
+
+    // ファイル名の最初のドットまでを記事 ID、残りを種類とする（<articleId>.parsed.json → parsed.json）
+    private void importFile(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.indexOf('.');
+        try {
+            byte[] content = Files.readAllBytes(file);
+            store.store(siteId, name.substring(0, dot), name.substring(dot + 1), content);
+            bytesRead += content.length;
+            filesImported++;
+        } catch (IOException e) {
+            failures++;
+            System.err.println("[articles] failed to import " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (name.equals(args[i])) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    private static boolean hasFlag(String[] args, String name) {
+        return Arrays.asList(args).contains(name);
+    }
+}
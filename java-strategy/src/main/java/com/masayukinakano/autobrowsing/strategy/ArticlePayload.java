@@ -0,0 +1,35 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public final class ArticlePayload {
+    @JsonProperty("articleId")
+    private String articleId;
+
+    @JsonProperty("contentType")
+    private String contentType;
+
+    @JsonProperty("content")
+    private String content;
+
+    public ArticlePayload() {
+    }
+
+    public ArticlePayload(String articleId, String contentType, String content) {
+        this.articleId = articleId;
+        this.contentType = contentType;
+        this.content = content;
+    }
+
+    public String getArticleId() {
+        return articleId;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public String getContent() {
+        return content;
+    }
+}
@@ -0,0 +1,73 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+final class BoilerplateDictionary {
+    private static final int MIN_SEGMENT_BYTES = 8;
+    private static final int MAX_SEGMENT_BYTES = 2048;
+
+    private BoilerplateDictionary() {
+    }
+
+    // 複数の記事に共通して現れる断片（テンプレート部分）を集め、zlib のプリセット辞書にする
+    static byte[] train(List<byte[]> samples, int maxBytes) {
+        Map<ByteBuffer, Integer> documentFrequency = new HashMap<>();
+        for (byte[] sample : samples) {
+            Set<ByteBuffer> seen = new HashSet<>();
+            int start = 0;
+            for (int i = 0; i < sample.length; i++) {
+                byte b = sample[i];
+                if (b != '\n' && b != '>' && i - start + 1 < MAX_SEGMENT_BYTES) {
+                    continue;
+                }
+                int length = i - start + 1;
+                if (length >= MIN_SEGMENT_BYTES) {
+                    ByteBuffer segment = ByteBuffer.wrap(sample, start, length).slice();
+                    if (seen.add(segment)) {
+                        documentFrequency.merge(segment, 1, Integer::sum);
+                    }
+                }
+                start = i + 1;
+            }
+        }
+
+        List<Map.Entry<ByteBuffer, Integer>> shared = new ArrayList<>();
+        for (Map.Entry<ByteBuffer, Integer> entry : documentFrequency.entrySet()) {
+            if (entry.getValue() >= 2) {
+                shared.add(entry);
+            }
+        }
+        shared.sort((a, b) -> Long.compare(score(b), score(a)));
+
+        List<ByteBuffer> selected = new ArrayList<>();
+        int total = 0;
+        for (Map.Entry<ByteBuffer, Integer> entry : shared) {
+            int length = entry.getKey().remaining();
+            if (total + length > maxBytes) {
+                continue;
+            }
+            selected.add(entry.getKey());
+            total += length;
+        }
+
+        // zlib は辞書の末尾ほど短い距離で参照できるため、頻出の断片を後ろに置く
+        byte[] dictionary = new byte[total];
+        int position = total;
+        for (ByteBuffer segment : selected) {
+            int length = segment.remaining();
+            position -= length;
+            segment.duplicate().get(dictionary, position, length);
+        }
+        return dictionary;
+    }
+
+    private static long score(Map.Entry<ByteBuffer, Integer> entry) {
+        return (long) entry.getValue() * entry.getKey().remaining();
+    }
+}
@@ -0,0 +1,77 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+public final class FeedWatermark {
+    // 1 件の外れたリンクで判定が振れないよう、日付で判断するときに必要なリンク数
+    static final int MIN_DATED_LINKS = 3;
+
+    private final long publishedAtMillis;
+    private final String href;
+
+    public FeedWatermark(long publishedAtMillis, String href) {
+        this.publishedAtMillis = publishedAtMillis;
+        this.href = href;
+    }
+
+    // 今回のバッチで新規だったリンクから次の watermark を決める。既知のサイドバーや固定表示のリンクは新規にならない。
+    // 新規リンクにも固定表示の新しいリンクが紛れ込むことがあるので、日付の分かるリンクが十分あれば上位の外れ値を読み飛ばす
+    public static FeedWatermark fromNewLinks(List<LinkSnapshot> newLinks) {
+        List<LinkSnapshot> dated = new ArrayList<>();
+        for (LinkSnapshot link : newLinks) {
+            if (link == null || link.getHref() == null || link.getHref().isBlank()) {
+                continue;
+            }
+            if (link.getPublishedAtMillis() != PublishedAtParser.UNKNOWN) {
+                dated.add(link);
+            }
+        }
+        if (dated.isEmpty()) {
+            return null;
+        }
+        dated.sort(Comparator.comparingLong(LinkSnapshot::getPublishedAtMillis).reversed());
+        LinkSnapshot chosen = dated.size() >= MIN_DATED_LINKS ? dated.get(MIN_DATED_LINKS - 1) : dated.get(dated.size() - 1);
+        return new FeedWatermark(chosen.getPublishedAtMillis(), chosen.getHref());
+    }
+
+    public long getPublishedAtMillis() {
+        return publishedAtMillis;
+    }
+
+    public String getHref() {
+        return href;
+    }
+
+    public boolean isNewerThan(FeedWatermark other) {
+        return other == null || publishedAtMillis > other.publishedAtMillis;
+    }
+
+    // 前回の最新リンクが画面に現れたか、日付の分かるリンクが十分な数あってすべて前回の最新以前になった時点で追いついたとみなす。
+    // サイドバーや「よく読まれている記事」の古いリンクが 1 件混じっただけでは止めない
+    public boolean isCrossedBy(List<LinkSnapshot> links) {
+        int dated = 0;
+        boolean anyNewer = false;
+        for (LinkSnapshot link : links) {
+            if (link == null) {
+                continue;
+            }
+            if (href != null && href.equals(link.getHref())) {
+                return true;
+            }
+            long millis = link.getPublishedAtMillis();
+            if (millis != PublishedAtParser.UNKNOWN) {
+                dated++;
+                anyNewer |= millis > publishedAtMillis;
+            }
+        }
+        return dated >= MIN_DATED_LINKS && !anyNewer;
+    }
+
+    @Override
+    public String toString() {
+        return Instant.ofEpochMilli(publishedAtMillis) + " " + href;
+    }
+}
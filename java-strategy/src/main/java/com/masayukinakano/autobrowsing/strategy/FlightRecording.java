@@ -0,0 +1,79 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+// 長時間クロール中のレイテンシ悪化を後から調べられるよう、上限付きのリングバッファで常時記録する
+final class FlightRecording {
+    static final String OPTION = "--jfr";
+
+    private static final long MAX_SIZE_BYTES = 64L * 1024 * 1024;
+    private static final Duration MAX_AGE = Duration.ofMinutes(30);
+
+    private FlightRecording() {
+    }
+
+    // --jfr / --jfr=<ファイルかディレクトリ> または AUTO_BROWSING_JFR で有効化する
+    static Recording startFromArguments(String[] args) {
+        return startFromArguments(args, System.getenv("AUTO_BROWSING_JFR"));
+    }
+
+    static Recording startFromArguments(String[] args, String environmentTarget) {
+        String target = null;
+        for (String arg : args) {
+            if (OPTION.equals(arg)) {
+                target = "";
+            } else if (arg.startsWith(OPTION + "=")) {
+                target = arg.substring(OPTION.length() + 1);
+            }
+        }
+        if (target == null) {
+            target = environmentTarget;
+        }
+        if (target == null) {
+            return null;
+        }
+        try {
+            return start(resolveDestination(target.trim()));
+        } catch (IOException | ParseException | RuntimeException e) {
+            System.err.println("[strategy] failed to start flight recording: " + e.getMessage());
+            return null;
+        }
+    }
+
+    static Recording start(Path destination) throws IOException, ParseException {
+        Recording recording = new Recording(Configuration.getConfiguration("default"));
+        recording.setName("auto-browsing-strategy");
+        recording.enable(RequestDecodeEvent.class);
+        recording.enable(StrategyEvaluationEvent.class);
+        recording.enable(LinkDedupEvent.class);
+        recording.enable(ParquetIoEvent.class);
+        recording.setToDisk(true);
+        recording.setMaxSize(MAX_SIZE_BYTES);
+        recording.setMaxAge(MAX_AGE);
+        recording.setDestination(destination);
+        recording.setDumpOnExit(true);
+        recording.start();
+        System.err.println("[strategy] flight recording started (max " + MAX_SIZE_BYTES / (1024 * 1024) + " MB / "
+            + MAX_AGE.toMinutes() + " min), dumps to " + destination + " on exit or via jcmd JFR.dump");
+        return recording;
+    }
+
+    private static Path resolveDestination(String target) throws IOException {
+        Path path = Path.of(target.isEmpty() ? "jfr" : target).toAbsolutePath();
+        if (target.isEmpty() || Files.isDirectory(path) || !path.getFileName().toString().endsWith(".jfr")) {
+            Files.createDirectories(path);
+            return path.resolve("strategy-" + Instant.now().toEpochMilli() + ".jfr");
+        }
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        return path;
+    }
+}
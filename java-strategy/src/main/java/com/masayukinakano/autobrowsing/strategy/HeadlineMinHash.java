@@ -0,0 +1,118 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.Locale;
+
+public final class HeadlineMinHash {
+    public static final int SIGNATURE_SIZE = 24;
+
+    private static final long[] MULTIPLIERS = new long[SIGNATURE_SIZE];
+    private static final long[] OFFSETS = new long[SIGNATURE_SIZE];
+    // 見出しに頻出する機能語。これだけで無関係な見出し同士が似て見えないよう特徴量から外す
+    private static final long[] STOPWORD_HASHES = Arrays.stream(new String[] {
+        "a", "an", "the", "of", "to", "in", "on", "for", "and", "or", "as", "at", "by", "is", "are", "be",
+        "was", "were", "with", "from", "after", "before", "its", "it", "that", "this", "than", "but", "not",
+        "will", "has", "have", "into", "over", "amid", "about", "up", "out", "says", "say", "new", "vs"
+    }).mapToLong(HeadlineMinHash::wordHash).sorted().toArray();
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            seed = mix(seed + i);
+            MULTIPLIERS[i] = seed | 1L;
+            seed = mix(seed);
+            OFFSETS[i] = seed;
+        }
+    }
+
+    private HeadlineMinHash() {
+    }
+
+    // 単語（日本語など分かち書きのない部分は文字 bigram）の集合に対する MinHash 署名。特徴量がなければ null
+    public static int[] signature(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        int[] signature = new int[SIGNATURE_SIZE];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        boolean[] any = new boolean[1];
+
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+        long wordHash = 0L;
+        long stemHash = 0L;
+        int wordLength = 0;
+        int lastLetter = -1;
+        int previousIdeograph = -1;
+        int i = 0;
+        while (i <= normalized.length()) {
+            int codePoint = i < normalized.length() ? normalized.codePointAt(i) : ' ';
+            i += i < normalized.length() ? Character.charCount(codePoint) : 1;
+            if (!isIdeographic(codePoint) && Character.isLetterOrDigit(codePoint)) {
+                previousIdeograph = -1;
+                stemHash = wordHash;
+                wordHash = wordHash * 31 + codePoint;
+                lastLetter = codePoint;
+                wordLength++;
+                continue;
+            }
+            if (wordLength > 0) {
+                // jump / jumps のような語尾の s だけの違いは同じ語として扱う
+                boolean plural = wordLength > 3 && lastLetter == 's';
+                addWord(signature, wordHash, plural ? stemHash : wordHash, any);
+                wordHash = 0L;
+                wordLength = 0;
+            }
+            if (isIdeographic(codePoint)) {
+                if (previousIdeograph >= 0) {
+                    addFeature(signature, ((long) previousIdeograph << 32) | codePoint, any);
+                }
+                previousIdeograph = codePoint;
+            } else {
+                previousIdeograph = -1;
+            }
+        }
+        return any[0] ? signature : null;
+    }
+
+    private static long wordHash(String word) {
+        long hash = 0L;
+        for (int i = 0; i < word.length(); i++) {
+            hash = hash * 31 + word.charAt(i);
+        }
+        return hash;
+    }
+
+    private static void addWord(int[] signature, long wordHash, long stemHash, boolean[] any) {
+        if (Arrays.binarySearch(STOPWORD_HASHES, wordHash) < 0) {
+            addFeature(signature, stemHash, any);
+        }
+    }
+
+    private static void addFeature(int[] signature, long feature, boolean[] any) {
+        long hash = mix(feature);
+        for (int i = 0; i < SIGNATURE_SIZE; i++) {
+            int value = (int) (mix(hash * MULTIPLIERS[i] + OFFSETS[i]) >>> 33);
+            if (value < signature[i]) {
+                signature[i] = value;
+            }
+        }
+        any[0] = true;
+    }
+
+    private static boolean isIdeographic(int codePoint) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+        return script == Character.UnicodeScript.HAN
+            || script == Character.UnicodeScript.HIRAGANA
+            || script == Character.UnicodeScript.KATAKANA;
+    }
+
+    static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
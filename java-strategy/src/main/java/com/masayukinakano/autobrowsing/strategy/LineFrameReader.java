@@ -0,0 +1,78 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+final class LineFrameReader {
+
+    interface FrameHandler {
+        boolean onFrame(byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private final ReadableByteChannel channel;
+    private ByteBuffer buffer;
+
+    LineFrameReader(ReadableByteChannel channel, int initialCapacity) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(initialCapacity);
+    }
+
+    // 改行区切りのフレームをバッファ上でそのまま切り出し、コピーせずにハンドラへ渡す
+    void readAll(FrameHandler handler) throws IOException {
+        int scanFrom = 0;
+        while (true) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                if (buffer.position() > 0) {
+                    dispatch(handler, 0, buffer.position());
+                }
+                return;
+            }
+            byte[] array = buffer.array();
+            int end = buffer.position();
+            int frameStart = 0;
+            for (int i = scanFrom; i < end; i++) {
+                if (array[i] != '\n') {
+                    continue;
+                }
+                if (!dispatch(handler, frameStart, i)) {
+                    return;
+                }
+                frameStart = i + 1;
+            }
+
+            int remaining = end - frameStart;
+            if (frameStart > 0 && remaining > 0) {
+                System.arraycopy(array, frameStart, array, 0, remaining);
+            }
+            buffer.clear();
+            buffer.position(remaining);
+            scanFrom = remaining;
+            if (remaining == buffer.capacity()) {
+                grow();
+            }
+        }
+    }
+
+    private boolean dispatch(FrameHandler handler, int start, int end) throws IOException {
+        byte[] array = buffer.array();
+        while (start < end && (array[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        while (end > start && (array[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        if (start == end) {
+            return true;
+        }
+        return handler.onFrame(array, start, end - start);
+    }
+
+    private void grow() {
+        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+        buffer.flip();
+        larger.put(buffer);
+        buffer = larger;
+    }
+}
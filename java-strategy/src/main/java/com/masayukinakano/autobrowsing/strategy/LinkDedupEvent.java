@@ -0,0 +1,26 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.masayukinakano.autobrowsing.LinkDedup")
+@Label("Link Dedup")
+@Category({"AutoBrowsing", "Links"})
+final class LinkDedupEvent extends Event {
+    @Label("Feed")
+    String feed;
+
+    @Label("Batch Size")
+    int batchSize;
+
+    @Label("Known Links Loaded")
+    int knownLinks;
+
+    @Label("New Links")
+    int newLinks;
+
+    @Label("Near-Duplicate Headlines")
+    int nearDuplicates;
+}
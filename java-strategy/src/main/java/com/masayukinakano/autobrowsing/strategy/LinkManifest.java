@@ -0,0 +1,259 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public final class LinkManifest {
+    public static final String FILE_NAME = "_manifest.json";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+        .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @JsonProperty("siteId")
+    private String siteId;
+
+    @JsonProperty("owner")
+    private String owner;
+
+    @JsonProperty("fencingToken")
+    private Long fencingToken;
+
+    @JsonProperty("files")
+    private List<Entry> files = new ArrayList<>();
+
+    @JsonIgnore
+    private Path siteDir;
+
+    public LinkManifest() {
+    }
+
+    public static LinkManifest load(Path siteDir, String siteId) throws IOException {
+        Path file = siteDir.resolve(FILE_NAME);
+        LinkManifest manifest = Files.exists(file) ? MAPPER.readValue(file.toFile(), LinkManifest.class) : new LinkManifest();
+        manifest.siteDir = siteDir;
+        manifest.siteId = siteId;
+        return manifest;
+    }
+
+    // 書き込み途中のマニフェストを読ませないよう、一時ファイルからリネームで置き換える
+    public void save() throws IOException {
+        checkFencing();
+        files.sort(Comparator.comparing(Entry::getPath));
+        Files.createDirectories(siteDir);
+        Path temp = siteDir.resolve(FILE_NAME + ".tmp");
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(temp.toFile(), this);
+        Files.move(temp, siteDir.resolve(FILE_NAME), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public String getSiteId() {
+        return siteId;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public Long getFencingToken() {
+        return fencingToken;
+    }
+
+    public void fence(String owner, long token) {
+        this.owner = owner;
+        this.fencingToken = token;
+    }
+
+    // ディスク上のマニフェストがより新しいリース保持者に書き換えられていれば、このノードは締め出されている
+    public void checkFencing() throws IOException {
+        Path file = siteDir.resolve(FILE_NAME);
+        if (fencingToken == null || !Files.exists(file)) {
+            return;
+        }
+        LinkManifest onDisk = MAPPER.readValue(file.toFile(), LinkManifest.class);
+        if (onDisk.fencingToken != null && onDisk.fencingToken > fencingToken) {
+            throw new IOException("fenced out of " + siteId + ": token " + fencingToken + " < "
+                + onDisk.fencingToken + " held by " + onDisk.owner);
+        }
+    }
+
+    public List<Entry> getFiles() {
+        return files;
+    }
+
+    @JsonIgnore
+    public Path getSiteDir() {
+        return siteDir;
+    }
+
+    public Entry find(String path) {
+        for (Entry entry : files) {
+            if (entry.path.equals(path)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    public void put(Entry entry) {
+        files.removeIf(existing -> existing.path.equals(entry.path));
+        files.add(entry);
+    }
+
+    public List<Entry> select(String feed, Long fromMillis, Long toMillis) {
+        List<Entry> selected = new ArrayList<>();
+        for (Entry entry : files) {
+            if (feed != null && !feed.equals(entry.feed)) {
+                continue;
+            }
+            if (entry.overlaps(fromMillis, toMillis)) {
+                selected.add(entry);
+            }
+        }
+        return selected;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static final class Entry {
+        @JsonProperty("path")
+        private String path;
+
+        @JsonProperty("feed")
+        private String feed;
+
+        @JsonProperty("date")
+        private String date;
+
+        @JsonProperty("rowCount")
+        private long rowCount;
+
+        @JsonProperty("sizeBytes")
+        private long sizeBytes;
+
+        @JsonProperty("minPublishedAt")
+        private Long minPublishedAt;
+
+        @JsonProperty("maxPublishedAt")
+        private Long maxPublishedAt;
+
+        @JsonProperty("undatedRows")
+        private long undatedRows;
+
+        @JsonProperty("minTimestamp")
+        private long minTimestamp;
+
+        @JsonProperty("maxTimestamp")
+        private long maxTimestamp;
+
+        @JsonProperty("minHref")
+        private String minHref;
+
+        @JsonProperty("maxHref")
+        private String maxHref;
+
+        // アーカイブからの取り込み行を含むファイル。ライブ取得の重複排除はフィードが違ってもこれを見る
+        @JsonProperty("archive")
+        private Boolean archive;
+
+        public Entry() {
+        }
+
+        public Entry(String path, String feed, String date, long rowCount, long sizeBytes, Long minPublishedAt,
+                     Long maxPublishedAt, long undatedRows, long minTimestamp, long maxTimestamp,
+                     String minHref, String maxHref) {
+            this.path = path;
+            this.feed = feed;
+            this.date = date;
+            this.rowCount = rowCount;
+            this.sizeBytes = sizeBytes;
+            this.minPublishedAt = minPublishedAt;
+            this.maxPublishedAt = maxPublishedAt;
+            this.undatedRows = undatedRows;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+            this.minHref = minHref;
+            this.maxHref = maxHref;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getFeed() {
+            return feed;
+        }
+
+        public String getDate() {
+            return date;
+        }
+
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        public long getSizeBytes() {
+            return sizeBytes;
+        }
+
+        public Long getMinPublishedAt() {
+            return minPublishedAt;
+        }
+
+        public Long getMaxPublishedAt() {
+            return maxPublishedAt;
+        }
+
+        public long getUndatedRows() {
+            return undatedRows;
+        }
+
+        public long getMinTimestamp() {
+            return minTimestamp;
+        }
+
+        public long getMaxTimestamp() {
+            return maxTimestamp;
+        }
+
+        public String getMinHref() {
+            return minHref;
+        }
+
+        public String getMaxHref() {
+            return maxHref;
+        }
+
+        public boolean isArchive() {
+            return Boolean.TRUE.equals(archive);
+        }
+
+        public void markArchive() {
+            archive = Boolean.TRUE;
+        }
+
+        public boolean mayContainHref(String href) {
+            return minHref != null && maxHref != null && href.compareTo(minHref) >= 0 && href.compareTo(maxHref) <= 0;
+        }
+
+        // publishedAt を持たない行は取得時刻で判定する
+        public boolean overlaps(Long fromMillis, Long toMillis) {
+            if (minPublishedAt != null && overlaps(minPublishedAt, maxPublishedAt, fromMillis, toMillis)) {
+                return true;
+            }
+            return undatedRows > 0 && overlaps(minTimestamp, maxTimestamp, fromMillis, toMillis);
+        }
+
+        private static boolean overlaps(long min, long max, Long fromMillis, Long toMillis) {
+            return (fromMillis == null || max >= fromMillis) && (toMillis == null || min <= toMillis);
+        }
+    }
+}
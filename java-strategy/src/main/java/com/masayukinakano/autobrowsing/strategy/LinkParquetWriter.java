@@ -1,26 +1,42 @@
 package com.masayukinakano.autobrowsing.strategy;
 
 import java.io.Closeable;
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.regex.Pattern;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.parquet.example.data.Group;
 import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.hadoop.ParquetFileReader;
 import org.apache.parquet.hadoop.ParquetFileWriter;
 import org.apache.parquet.hadoop.ParquetReader;
 import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.ReadSupport;
 import org.apache.parquet.hadoop.example.ExampleParquetWriter;
 import org.apache.parquet.hadoop.example.GroupReadSupport;
 import org.apache.parquet.hadoop.example.GroupWriteSupport;
 import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
 import org.apache.parquet.schema.MessageType;
 import org.apache.parquet.schema.OriginalType;
 import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
@@ -34,37 +50,60 @@ public final class LinkParquetWriter implements Closeable {
         .required(PrimitiveTypeName.BINARY).as(OriginalType.UTF8).named("href")
         .optional(PrimitiveTypeName.BINARY).as(OriginalType.UTF8).named("text")
         .optional(PrimitiveTypeName.BINARY).as(OriginalType.UTF8).named("publishedAt")
+        .optional(PrimitiveTypeName.INT64).as(LogicalTypeAnnotation.timestampType(true, LogicalTypeAnnotation.TimeUnit.MILLIS))
+            .named("publishedAtMillis")
         .required(PrimitiveTypeName.INT64).named("timestampMillis")
+        .optional(PrimitiveTypeName.INT64).named("clusterId")
         .named("LinkRecord");
 
+    private static final String HREF_PROJECTION = "message LinkRecord { required binary href (UTF8); }";
+
+    private static final String HEADLINE_PROJECTION =
+        "message LinkRecord { required binary href (UTF8); optional binary text (UTF8); optional int64 clusterId; }";
+
+    private static final String LEGACY_HEADLINE_PROJECTION =
+        "message LinkRecord { required binary href (UTF8); optional binary text (UTF8); }";
+
+    private static final DateTimeFormatter PARTITION_DATE = DateTimeFormatter.ISO_LOCAL_DATE.withZone(ZoneOffset.UTC);
+
+    private static final long WATERMARK_SESSION_GAP_MILLIS = 5 * 60 * 1000L;
+
     private static final Pattern SAFE_FILENAME = Pattern.compile("[^a-zA-Z0-9._-]");
 
-    private static final class LinkRecord {
-        private final String siteId;
-        private final String pageUrl;
-        private final String href;
-        private final String text;
-        private final String publishedAt;
-        private final long timestampMillis;
+    private static final class SitePartitions {
+        private final Path directory;
+        private final LinkManifest manifest;
+        private final long fencingToken;
+        private final Map<String, Set<String>> fileHrefs = new HashMap<>();
 
-        private LinkRecord(String siteId, String pageUrl, String href, String text, String publishedAt, long timestampMillis) {
-            this.siteId = siteId;
-            this.pageUrl = pageUrl;
-            this.href = href;
-            this.text = text;
-            this.publishedAt = publishedAt;
-            this.timestampMillis = timestampMillis;
+        private SitePartitions(Path directory, LinkManifest manifest, long fencingToken) {
+            this.directory = directory;
+            this.manifest = manifest;
+            this.fencingToken = fencingToken;
         }
     }
 
     private final Path outputDir;
-    private final Set<Path> loggedExistingFiles = new HashSet<>();
+    private final Map<String, SitePartitions> sites = new HashMap<>();
+    private final List<LinkSink> sinks = new ArrayList<>();
+    private final SiteLeaseManager leases;
+    private final NearDuplicateIndex nearDuplicates = new NearDuplicateIndex();
+    private final Thread nearDuplicateWarmer;
+    private volatile boolean closed;
+    private final Map<String, FeedWatermark> watermarks = new HashMap<>();
+    private final Map<String, FeedWatermark> sessionWatermarks = new HashMap<>();
+    private final Map<String, Long> lastFeedRequestMillis = new HashMap<>();
 
-    private LinkParquetWriter(Path outputDir) throws IOException {
+    private LinkParquetWriter(Path outputDir, SiteLeaseManager leases) throws IOException {
         Objects.requireNonNull(outputDir, "outputDir");
         Files.createDirectories(outputDir);
         this.outputDir = outputDir;
+        this.leases = leases;
         System.err.println("[strategy] link output directory: " + outputDir.toAbsolutePath());
+        // 既存の見出しの読み込みで最初のリクエストを待たせないよう、索引はバックグラウンドで温める
+        this.nearDuplicateWarmer = new Thread(this::warmNearDuplicates, "near-duplicate-warmup");
+        nearDuplicateWarmer.setDaemon(true);
+        nearDuplicateWarmer.start();
     }
 
     public static LinkParquetWriter openDefault() {
@@ -76,79 +115,329 @@ public final class LinkParquetWriter implements Closeable {
             } else {
                 basePath = Path.of("links-output");
             }
-            return new LinkParquetWriter(basePath);
+            LinkParquetWriter writer = new LinkParquetWriter(basePath, SiteLeaseManager.openDefault(basePath));
+            writer.addSinks(System.getenv("AUTO_BROWSING_LINK_SINKS"));
+            return writer;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create output directory", e);
+        }
+    }
+
+    public static LinkParquetWriter open(Path outputDir) {
+        return open(outputDir, null);
+    }
+
+    public static LinkParquetWriter open(Path outputDir, String sinkNames) {
+        try {
+            LinkParquetWriter writer = new LinkParquetWriter(outputDir.toAbsolutePath(), null);
+            writer.addSinks(sinkNames);
+            return writer;
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create output directory", e);
+        }
+    }
+
+    // 共有ディレクトリとして、指定したリースで書き込む
+    static LinkParquetWriter openShared(Path outputDir, SiteLeaseManager leases) {
+        try {
+            return new LinkParquetWriter(outputDir.toAbsolutePath(), Objects.requireNonNull(leases, "leases"));
         } catch (IOException e) {
             throw new IllegalStateException("Failed to create output directory", e);
         }
     }
 
+    Path getOutputDir() {
+        return outputDir;
+    }
+
+    public synchronized void addSink(LinkSink sink) {
+        sinks.add(Objects.requireNonNull(sink, "sink"));
+        System.err.println("[strategy] link sink enabled: " + sink.name());
+    }
+
+    // カンマ区切りの名前で追加の出力先を有効にする（例: "arrow"）。Parquet は常に書き込む
+    private void addSinks(String sinkNames) {
+        if (sinkNames == null || sinkNames.isBlank()) {
+            return;
+        }
+        for (String name : sinkNames.split(",")) {
+            String trimmed = name.trim().toLowerCase(Locale.ROOT);
+            if (trimmed.isEmpty() || "parquet".equals(trimmed)) {
+                continue;
+            }
+            if (ArrowLinkSink.NAME.equals(trimmed)) {
+                addSink(new ArrowLinkSink(outputDir.resolve("arrow")));
+            } else {
+                System.err.println("[strategy] unknown link sink: " + trimmed);
+            }
+        }
+    }
+
     public synchronized void writeLinks(String siteId, String pageUrl, List<LinkSnapshot> links) {
+        persist(siteId, pageUrl, links, false);
+    }
+
+    // アーカイブからの取り込み。フィードのクロール位置ではないので watermark は進めない。
+    // ライブ取得時とフィードの分け方が異なるため、重複排除はサイト全体に対して行い、書いたファイルはマニフェストで
+    // アーカイブ由来と印を付ける（後のライブ取得が同じ記事を別フィードとして取り直さないように）。保存できなければ false
+    synchronized boolean importLinks(String siteId, String pageUrl, List<LinkSnapshot> links) {
+        return persist(siteId, pageUrl, links, true);
+    }
+
+    private boolean persist(String siteId, String pageUrl, List<LinkSnapshot> links, boolean archiveImport) {
         if (links == null || links.isEmpty()) {
-            return;
+            return true;
         }
 
-        String fileKey = buildFileKey(siteId, pageUrl);
-        Path parquetFile = outputDir.resolve(fileKey + ".parquet");
-        System.err.println("[strategy] resolved parquet path: " + parquetFile.toAbsolutePath());
+        String sanitizedSiteId = sanitize(siteId);
+        String feedKey = buildFileKey(siteId, pageUrl);
+        SitePartitions site;
+        try {
+            site = ownedSite(siteKey(siteId));
+        } catch (IOException e) {
+            System.err.println("[strategy] failed to load link manifest: " + e.getMessage());
+            return false;
+        }
+        if (site == null) {
+            return false;
+        }
+        try {
+            migrateLegacyFile(site, feedKey);
+        } catch (IOException e) {
+            System.err.println("[strategy] failed to migrate legacy parquet: " + e.getMessage());
+            return false;
+        }
 
-        List<LinkRecord> records = new ArrayList<>();
-        Set<String> known = new HashSet<>();
-        if (Files.exists(parquetFile)) {
-            if (loggedExistingFiles.add(parquetFile)) {
-                System.err.println("[strategy] loading existing links from " + parquetFile.toAbsolutePath());
-            }
-            try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new org.apache.hadoop.fs.Path(parquetFile.toUri())).build()) {
-                Group record;
-                while ((record = reader.read()) != null) {
-                    LinkRecord existingRecord = convertGroup(record);
-                    if (existingRecord != null) {
-                        records.add(existingRecord);
-                        if (!existingRecord.siteId.isBlank() && !existingRecord.href.isBlank()) {
-                            known.add(existingRecord.siteId + "|" + existingRecord.href);
-                        }
-                    }
-                }
-                if (!records.isEmpty()) {
-                    System.err.println("[strategy] existing records: " + records.size());
-                }
-            } catch (IOException e) {
-                System.err.println("[strategy] failed to read existing parquet: " + e.getMessage());
+        List<String> batchHrefs = new ArrayList<>(links.size());
+        for (LinkSnapshot link : links) {
+            if (link != null && link.getHref() != null && !link.getHref().isBlank()) {
+                batchHrefs.add(link.getHref());
             }
         }
+        LinkDedupEvent dedupEvent = new LinkDedupEvent();
+        dedupEvent.begin();
+        Set<String> known = knownHrefs(site, archiveImport ? null : feedKey, batchHrefs);
 
         long timestamp = Instant.now().toEpochMilli();
-        int newRecords = 0;
+        Map<String, List<LinkRecord>> newByDate = new TreeMap<>();
+        Set<String> added = new HashSet<>();
+        // 共有の索引には保存に成功してから載せる。それまではバッチ内の近似重複だけをこの索引で見る
+        NearDuplicateIndex batchIndex = new NearDuplicateIndex();
+        Map<String, int[]> signatures = new HashMap<>();
+        int nearDuplicateRecords = 0;
         for (LinkSnapshot link : links) {
             if (link == null || link.getHref() == null || link.getHref().isBlank()) {
                 continue;
             }
-            String sanitizedSiteId = sanitize(siteId);
-            String key = sanitizedSiteId + "|" + link.getHref();
-            if (!known.add(key)) {
+            if (known.contains(link.getHref()) || !added.add(link.getHref())) {
                 continue;
             }
-            records.add(new LinkRecord(
+            Long clusterId = null;
+            int[] signature = HeadlineMinHash.signature(link.getText());
+            if (signature != null) {
+                clusterId = nearDuplicates.findCluster(signature);
+                if (clusterId == null) {
+                    clusterId = batchIndex.findCluster(signature);
+                }
+                if (clusterId != null) {
+                    nearDuplicateRecords++;
+                } else {
+                    clusterId = NearDuplicateIndex.newClusterId(link.getHref());
+                }
+                batchIndex.register(signature, clusterId);
+                signatures.put(link.getHref(), signature);
+            }
+            long publishedAtMillis = link.getPublishedAtMillis();
+            LinkRecord record = new LinkRecord(
                 sanitizedSiteId,
                 sanitize(pageUrl),
                 link.getHref(),
                 sanitize(link.getText()),
                 sanitize(link.getPublishedAt()),
-                timestamp
-            ));
-            newRecords++;
+                publishedAtMillis == PublishedAtParser.UNKNOWN ? null : publishedAtMillis,
+                timestamp,
+                clusterId
+            );
+            newByDate.computeIfAbsent(partitionDate(record), key -> new ArrayList<>()).add(record);
+        }
+        if (dedupEvent.shouldCommit()) {
+            dedupEvent.feed = feedKey;
+            dedupEvent.batchSize = links.size();
+            dedupEvent.knownLinks = known.size();
+            dedupEvent.newLinks = added.size();
+            dedupEvent.nearDuplicates = nearDuplicateRecords;
+            dedupEvent.commit();
+        }
+
+        if (added.isEmpty()) {
+            return true;
+        }
+        if (!stillOwned(site)) {
+            return false;
+        }
+
+        List<LinkRecord> written = new ArrayList<>(added.size());
+        List<String> newHrefs = new ArrayList<>(added.size());
+        boolean complete = true;
+        for (Map.Entry<String, List<LinkRecord>> partition : newByDate.entrySet()) {
+            if (!appendToPartition(site, feedKey, partition.getKey(), partition.getValue(), archiveImport)) {
+                complete = false;
+                continue;
+            }
+            for (LinkRecord record : partition.getValue()) {
+                written.add(record);
+                newHrefs.add(record.getHref());
+            }
+        }
+        try {
+            site.manifest.save();
+            for (LinkRecord record : written) {
+                int[] signature = signatures.get(record.getHref());
+                if (signature != null) {
+                    nearDuplicates.register(signature, record.getClusterId());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("[strategy] failed to update link manifest: " + e.getMessage());
+            complete = false;
+        }
+
+        System.err.println("[strategy] saved " + newHrefs.size() + " new links for " + feedKey + " into "
+            + newByDate.size() + " partition(s) (" + nearDuplicateRecords + " near-duplicate headlines)");
+
+        try {
+            appendKnownCache(feedKey, newHrefs);
+        } catch (IOException e) {
+            System.err.println("[strategy] failed to update known cache: " + e.getMessage());
         }
 
-        System.err.println("[strategy] known map size after load: " + known.size());
+        for (LinkSink sink : sinks) {
+            try {
+                sink.write(site.manifest.getSiteId(), feedKey, written);
+            } catch (IOException e) {
+                System.err.println("[strategy] failed to write links to " + sink.name() + " sink: " + e.getMessage());
+            }
+        }
+        // watermark は全パーティションの保存に成功した後だけ進める。先に進めると失敗分を次回のクロールで取り直せない
+        if (complete && !archiveImport) {
+            List<LinkSnapshot> newLinks = new ArrayList<>(added.size());
+            for (LinkSnapshot link : links) {
+                if (link != null && added.contains(link.getHref())) {
+                    newLinks.add(link);
+                }
+            }
+            updateWatermark(feedKey, newLinks);
+        }
+        return complete;
+    }
 
-        if (newRecords == 0) {
+    // 日付パーティション内の該当ファイルだけを書き直し、マニフェストの統計を更新する
+    private boolean appendToPartition(SitePartitions site, String feedKey, String date, List<LinkRecord> newRecords,
+                                      boolean archiveImport) {
+        String relativePath = "date=" + date + "/" + feedKey + ".parquet";
+        Path parquetFile = site.directory.resolve(relativePath);
+        List<LinkRecord> records = new ArrayList<>();
+        if (Files.exists(parquetFile)) {
             try {
-                writeKnownCache(parquetFile, records);
+                readRecords(parquetFile, records);
             } catch (IOException e) {
-                System.err.println("[strategy] failed to update known cache: " + e.getMessage());
+                System.err.println("[strategy] failed to read existing parquet: " + e.getMessage());
+                return false;
             }
-            return;
         }
+        // マニフェスト保存前に中断した書き込みをやり直しても同じ行が増えないよう、ファイル内の href で重複を除く
+        Set<String> hrefs = new HashSet<>((records.size() + newRecords.size()) * 2);
+        for (LinkRecord record : records) {
+            hrefs.add(record.getHref());
+        }
+        int existing = records.size();
+        for (LinkRecord record : newRecords) {
+            if (hrefs.add(record.getHref())) {
+                records.add(record);
+            }
+        }
+
+        if (records.size() > existing || !Files.exists(parquetFile)) {
+            try {
+                Files.createDirectories(parquetFile.getParent());
+                writePartitionFile(site, parquetFile, records);
+            } catch (IOException e) {
+                System.err.println("[strategy] failed to persist links: " + e.getMessage());
+                return false;
+            }
+        }
+
+        String minHref = null;
+        String maxHref = null;
+        Long minPublishedAt = null;
+        Long maxPublishedAt = null;
+        long undatedRows = 0;
+        long minTimestamp = Long.MAX_VALUE;
+        long maxTimestamp = Long.MIN_VALUE;
+        for (LinkRecord record : records) {
+            if (minHref == null || record.getHref().compareTo(minHref) < 0) {
+                minHref = record.getHref();
+            }
+            if (maxHref == null || record.getHref().compareTo(maxHref) > 0) {
+                maxHref = record.getHref();
+            }
+            if (record.getPublishedAtMillis() == null) {
+                undatedRows++;
+            } else {
+                minPublishedAt = minPublishedAt == null ? record.getPublishedAtMillis() : Math.min(minPublishedAt, record.getPublishedAtMillis());
+                maxPublishedAt = maxPublishedAt == null ? record.getPublishedAtMillis() : Math.max(maxPublishedAt, record.getPublishedAtMillis());
+            }
+            minTimestamp = Math.min(minTimestamp, record.getTimestampMillis());
+            maxTimestamp = Math.max(maxTimestamp, record.getTimestampMillis());
+        }
+        long sizeBytes;
+        try {
+            sizeBytes = Files.size(parquetFile);
+        } catch (IOException e) {
+            sizeBytes = 0;
+        }
+        LinkManifest.Entry previous = site.manifest.find(relativePath);
+        LinkManifest.Entry entry = new LinkManifest.Entry(relativePath, feedKey, date, records.size(), sizeBytes,
+            minPublishedAt, maxPublishedAt, undatedRows, minTimestamp, maxTimestamp, minHref, maxHref);
+        if (archiveImport || (previous != null && previous.isArchive())) {
+            entry.markArchive();
+        }
+        site.manifest.put(entry);
+        site.fileHrefs.put(relativePath, hrefs);
+        return true;
+    }
 
+    // 一時ファイルに書いてからフェンシングトークンを確かめてリネームする。
+    // 締め出されたノードが新しいリース保持者のファイルを上書きしないよう、確認前に本来のファイルへは書かない
+    private void writePartitionFile(SitePartitions site, Path parquetFile, List<LinkRecord> records) throws IOException {
+        Path temp = parquetFile.resolveSibling(parquetFile.getFileName() + ".tmp");
+        writeRecords(temp, records);
+        try {
+            if (leases != null) {
+                if (!leases.isHeld(site.manifest.getSiteId(), site.fencingToken)) {
+                    throw new IOException("lease for " + site.manifest.getSiteId() + " expired before write");
+                }
+                site.manifest.checkFencing();
+            }
+            Files.move(temp, parquetFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            sites.remove(site.manifest.getSiteId());
+            throw e;
+        } finally {
+            // Hadoop のローカル FS が書くチェックサムは一時ファイル名に紐づくので、リネーム後の読み込みで食い違わないよう消す
+            Files.deleteIfExists(checksumFile(temp));
+        }
+        Files.deleteIfExists(checksumFile(parquetFile));
+    }
+
+    private static Path checksumFile(Path file) {
+        return file.resolveSibling("." + file.getFileName() + ".crc");
+    }
+
+    private void writeRecords(Path parquetFile, List<LinkRecord> records) throws IOException {
+        ParquetIoEvent event = new ParquetIoEvent();
+        event.begin();
         Configuration conf = new Configuration();
         GroupWriteSupport.setSchema(SCHEMA, conf);
         SimpleGroupFactory factory = new SimpleGroupFactory(SCHEMA);
@@ -159,37 +448,372 @@ public final class LinkParquetWriter implements Closeable {
             .build()) {
             for (LinkRecord record : records) {
                 Group group = factory.newGroup()
-                    .append("siteId", record.siteId)
-                    .append("pageUrl", record.pageUrl)
-                    .append("href", record.href)
-                    .append("text", record.text)
-                    .append("publishedAt", record.publishedAt)
-                    .append("timestampMillis", record.timestampMillis);
+                    .append("siteId", record.getSiteId())
+                    .append("pageUrl", record.getPageUrl())
+                    .append("href", record.getHref())
+                    .append("text", record.getText())
+                    .append("publishedAt", record.getPublishedAt());
+                if (record.getPublishedAtMillis() != null) {
+                    group.append("publishedAtMillis", record.getPublishedAtMillis());
+                }
+                group.append("timestampMillis", record.getTimestampMillis());
+                if (record.getClusterId() != null) {
+                    group.append("clusterId", record.getClusterId());
+                }
                 writer.write(group);
             }
-        } catch (IOException e) {
-            System.err.println("[strategy] failed to persist links: " + e.getMessage());
+        }
+        commitParquetEvent(event, ParquetIoEvent.WRITE, parquetFile, records.size());
+    }
+
+    private static void commitParquetEvent(ParquetIoEvent event, String operation, Path parquetFile, long rows) {
+        event.end();
+        if (!event.shouldCommit()) {
             return;
         }
+        event.operation = operation;
+        event.file = parquetFile.toString();
+        event.rows = rows;
+        try {
+            event.bytes = Files.size(parquetFile);
+        } catch (IOException e) {
+            event.bytes = -1;
+        }
+        event.commit();
+    }
+
+    // マニフェストの href 範囲にバッチのリンクが入るファイルだけを開いて既知リンクを集める
+    // feedKey が null ならサイト内の全フィードを対象にする。フィード指定でもアーカイブ取り込みのファイルは含める
+    // （取り込み側のフィードキーは記事 URL から決まり、ライブ取得のページ URL 由来のキーとは一致しないため）
+    private Set<String> knownHrefs(SitePartitions site, String feedKey, List<String> batchHrefs) {
+        Set<String> known = new HashSet<>();
+        if (batchHrefs.isEmpty()) {
+            return known;
+        }
+        List<String> sorted = new ArrayList<>(batchHrefs);
+        Collections.sort(sorted);
+        int opened = 0;
+        int skipped = 0;
+        for (LinkManifest.Entry entry : site.manifest.getFiles()) {
+            if (feedKey != null && !feedKey.equals(entry.getFeed()) && !entry.isArchive()) {
+                continue;
+            }
+            if (!rangeContainsAny(entry, sorted)) {
+                skipped++;
+                continue;
+            }
+            Set<String> hrefs = site.fileHrefs.get(entry.getPath());
+            if (hrefs == null) {
+                try {
+                    hrefs = readHrefs(site.directory.resolve(entry.getPath()));
+                } catch (IOException e) {
+                    System.err.println("[strategy] failed to read existing parquet: " + e.getMessage());
+                    continue;
+                }
+                site.fileHrefs.put(entry.getPath(), hrefs);
+                opened++;
+            }
+            known.addAll(hrefs);
+        }
+        if (feedKey == null) {
+            opened += addLegacyHrefs(site, known);
+        }
+        if (opened > 0) {
+            System.err.println("[strategy] loaded links from " + opened + " partition file(s) for "
+                + (feedKey != null ? feedKey : site.manifest.getSiteId()) + " (skipped " + skipped + " by manifest)");
+        }
+        return known;
+    }
+
+    // まだ移行されていない他フィードの旧形式ファイルも既知リンクとして読む（移行はそのフィードの次回書き込み時）
+    private int addLegacyHrefs(SitePartitions site, Set<String> known) {
+        int opened = 0;
+        String siteKey = site.manifest.getSiteId();
+        try (DirectoryStream<Path> legacyFiles = Files.newDirectoryStream(outputDir, siteKey + "*.parquet")) {
+            for (Path legacyFile : legacyFiles) {
+                String name = legacyFile.getFileName().toString();
+                if (!name.equals(siteKey + ".parquet") && !name.startsWith(siteKey + "_")) {
+                    continue;
+                }
+                String cacheKey = "../" + name;
+                Set<String> hrefs = site.fileHrefs.get(cacheKey);
+                if (hrefs == null) {
+                    hrefs = readHrefs(legacyFile);
+                    site.fileHrefs.put(cacheKey, hrefs);
+                    opened++;
+                }
+                known.addAll(hrefs);
+            }
+        } catch (IOException e) {
+            System.err.println("[strategy] failed to read legacy parquet: " + e.getMessage());
+        }
+        return opened;
+    }
+
+    private static boolean rangeContainsAny(LinkManifest.Entry entry, List<String> sortedHrefs) {
+        if (entry.getMinHref() == null) {
+            return false;
+        }
+        int index = Collections.binarySearch(sortedHrefs, entry.getMinHref());
+        int insertion = index >= 0 ? index : -index - 1;
+        return insertion < sortedHrefs.size() && entry.mayContainHref(sortedHrefs.get(insertion));
+    }
 
-        System.err.println("[strategy] saved " + newRecords + " new links to " + parquetFile.toAbsolutePath());
+    private String siteKey(String siteId) {
+        return sanitizeFileName(siteId == null || siteId.isBlank() ? "default" : siteId);
+    }
 
+    // 共有ディレクトリではリースを持つサイトだけを書く。トークンが変わったら他ノードの書き込みを取り込むため読み直す
+    private SitePartitions ownedSite(String siteKey) throws IOException {
+        long token = SiteLeaseManager.NO_LEASE;
+        if (leases != null) {
+            token = leases.acquire(siteKey);
+            if (token == SiteLeaseManager.NO_LEASE) {
+                sites.remove(siteKey);
+                return null;
+            }
+        }
+        SitePartitions site = sites.get(siteKey);
+        if (site == null || site.fencingToken != token) {
+            Path directory = outputDir.resolve("siteId=" + siteKey);
+            LinkManifest manifest = LinkManifest.load(directory, siteKey);
+            if (leases != null) {
+                manifest.fence(leases.getNodeId(), token);
+                manifest.save();
+            }
+            site = new SitePartitions(directory, manifest, token);
+            sites.put(siteKey, site);
+        }
+        return site;
+    }
+
+    // 共有ディレクトリで他ノードがサイトのリースを保持しているとき、そのノード ID。書き込めるなら null
+    public synchronized String leaseHolder(String siteId) {
+        return leases == null ? null : leases.foreignOwner(siteKey(siteId));
+    }
+
+    private boolean stillOwned(SitePartitions site) {
+        if (leases == null) {
+            return true;
+        }
+        String siteKey = site.manifest.getSiteId();
         try {
-            writeKnownCache(parquetFile, records);
+            if (leases.isHeld(siteKey, site.fencingToken)) {
+                site.manifest.checkFencing();
+                return true;
+            }
+            System.err.println("[strategy] lease for " + siteKey + " expired before write, dropping batch");
         } catch (IOException e) {
-            System.err.println("[strategy] failed to update known cache: " + e.getMessage());
+            System.err.println("[strategy] " + e.getMessage());
         }
+        sites.remove(siteKey);
+        return false;
     }
 
-    private void writeKnownCache(Path parquetFile, List<LinkRecord> records) throws IOException {
-        Path knownFile = parquetFile.resolveSibling(parquetFile.getFileName().toString() + ".known");
-        List<String> hrefs = new ArrayList<>(records.size());
+    // 旧形式のフラットな <feed>.parquet をパーティションへ移し、元ファイルは .legacy として残す
+    private void migrateLegacyFile(SitePartitions site, String feedKey) throws IOException {
+        Path legacyFile = outputDir.resolve(feedKey + ".parquet");
+        if (!Files.exists(legacyFile)) {
+            return;
+        }
+        List<LinkRecord> records = new ArrayList<>();
+        readRecords(legacyFile, records);
+        // 前回の移行がリネーム前に中断していても、既にパーティションへ入った行は二重に追加しない
+        List<String> legacyHrefs = new ArrayList<>(records.size());
+        for (LinkRecord record : records) {
+            legacyHrefs.add(record.getHref());
+        }
+        Set<String> migrated = knownHrefs(site, feedKey, legacyHrefs);
+        Map<String, List<LinkRecord>> byDate = new TreeMap<>();
         for (LinkRecord record : records) {
-            if (record.href != null && !record.href.isBlank()) {
-                hrefs.add(record.href);
+            if (migrated.add(record.getHref())) {
+                byDate.computeIfAbsent(partitionDate(record), key -> new ArrayList<>()).add(record);
+            }
+        }
+        for (Map.Entry<String, List<LinkRecord>> partition : byDate.entrySet()) {
+            if (!appendToPartition(site, feedKey, partition.getKey(), partition.getValue(), false)) {
+                throw new IOException("failed to migrate " + legacyFile.getFileName());
+            }
+        }
+        site.manifest.save();
+        Files.move(legacyFile, legacyFile.resolveSibling(legacyFile.getFileName() + ".legacy"),
+            StandardCopyOption.REPLACE_EXISTING);
+        System.err.println("[strategy] migrated " + legacyHrefs.size() + " links from " + legacyFile.getFileName()
+            + " into " + byDate.size() + " partition(s)");
+    }
+
+    private static String partitionDate(LinkRecord record) {
+        long millis = record.getPublishedAtMillis() != null ? record.getPublishedAtMillis() : record.getTimestampMillis();
+        return PARTITION_DATE.format(Instant.ofEpochMilli(millis));
+    }
+
+    private Set<String> readHrefs(Path parquetFile) throws IOException {
+        ParquetIoEvent event = new ParquetIoEvent();
+        event.begin();
+        Configuration conf = new Configuration();
+        conf.set(ReadSupport.PARQUET_READ_SCHEMA, HREF_PROJECTION);
+        Set<String> hrefs = new HashSet<>();
+        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new org.apache.hadoop.fs.Path(parquetFile.toUri()))
+            .withConf(conf)
+            .build()) {
+            Group record;
+            while ((record = reader.read()) != null) {
+                String href = safeBinary(record, "href");
+                if (!href.isBlank()) {
+                    hrefs.add(href);
+                }
+            }
+        }
+        commitParquetEvent(event, ParquetIoEvent.READ_HREFS, parquetFile, hrefs.size());
+        return hrefs;
+    }
+
+    private void readRecords(Path parquetFile, List<LinkRecord> records) throws IOException {
+        ParquetIoEvent event = new ParquetIoEvent();
+        event.begin();
+        int before = records.size();
+        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new org.apache.hadoop.fs.Path(parquetFile.toUri())).build()) {
+            Group record;
+            while ((record = reader.read()) != null) {
+                LinkRecord existingRecord = convertGroup(record);
+                if (existingRecord != null) {
+                    records.add(existingRecord);
+                }
+            }
+        }
+        commitParquetEvent(event, ParquetIoEvent.READ, parquetFile, records.size() - before);
+    }
+
+    // サイトをまたいだ近似重複を検出できるよう、起動時に全ファイルの見出しを索引に載せる。
+    // 温まる前に届いた見出しは、既存の近似重複があっても新しいクラスタ ID になることがある
+    private void warmNearDuplicates() {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(outputDir)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (name.endsWith(".parquet") && Files.isRegularFile(entry)) {
+                    files.add(entry);
+                } else if (name.startsWith("siteId=") && Files.isDirectory(entry)) {
+                    LinkManifest manifest = LinkManifest.load(entry, name.substring("siteId=".length()));
+                    for (LinkManifest.Entry file : manifest.getFiles()) {
+                        files.add(entry.resolve(file.getPath()));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("[strategy] failed to list parquet files: " + e.getMessage());
+        }
+        for (Path file : files) {
+            if (closed) {
+                return;
+            }
+            try {
+                indexHeadlines(file);
+            } catch (FileNotFoundException | NoSuchFileException e) {
+                // 走査中に移行でリネームされた旧形式ファイル。行は移行先のパーティションに入る
+                continue;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("[strategy] failed to index " + file.getFileName() + ": " + e.getMessage());
+            }
+        }
+        System.err.println("[strategy] near-duplicate index warmed with " + nearDuplicates.size() + " headlines");
+    }
+
+    // 近似重複の索引に必要な href / text / clusterId の列だけを読む。clusterId 列のない古いファイルはフッターで判別する
+    private void indexHeadlines(Path parquetFile) throws IOException {
+        ParquetIoEvent event = new ParquetIoEvent();
+        event.begin();
+        org.apache.hadoop.fs.Path path = new org.apache.hadoop.fs.Path(parquetFile.toUri());
+        Configuration conf = new Configuration();
+        boolean hasClusterId;
+        try (ParquetFileReader footer = ParquetFileReader.open(HadoopInputFile.fromPath(path, conf))) {
+            MessageType fileSchema = footer.getFileMetaData().getSchema();
+            if (!fileSchema.containsField("text")) {
+                return;
+            }
+            hasClusterId = fileSchema.containsField("clusterId");
+        }
+        conf.set(ReadSupport.PARQUET_READ_SCHEMA, hasClusterId ? HEADLINE_PROJECTION : LEGACY_HEADLINE_PROJECTION);
+        long rows = 0;
+        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), path).withConf(conf).build()) {
+            Group record;
+            while ((record = reader.read()) != null) {
+                rows++;
+                String href = safeBinary(record, "href");
+                int[] signature = HeadlineMinHash.signature(safeBinary(record, "text"));
+                if (href.isBlank() || signature == null) {
+                    continue;
+                }
+                if (hasClusterId && record.getFieldRepetitionCount("clusterId") > 0) {
+                    nearDuplicates.register(signature, record.getLong("clusterId", 0));
+                } else {
+                    nearDuplicates.assign(signature, href);
+                }
+            }
+        }
+        commitParquetEvent(event, ParquetIoEvent.READ_HEADLINES, parquetFile, rows);
+    }
+
+    // テスト用。バックグラウンドの索引構築が終わるまで待つ
+    void awaitNearDuplicateWarmup() throws InterruptedException {
+        nearDuplicateWarmer.join();
+    }
+
+    // 同一クロール中に進んだ watermark で自身を止めないよう、クロール開始時点の値を返す。
+    // 複数のフィードを交互に取得しても互いのクロールを区切らないよう、間隔はフィードごとに見る
+    public synchronized FeedWatermark getWatermark(String siteId, String pageUrl) {
+        String fileKey = buildFileKey(siteId, pageUrl);
+        long now = Instant.now().toEpochMilli();
+        Long last = lastFeedRequestMillis.put(fileKey, now);
+        if (last == null || now - last > WATERMARK_SESSION_GAP_MILLIS) {
+            sessionWatermarks.put(fileKey, loadWatermark(fileKey));
+        }
+        return sessionWatermarks.get(fileKey);
+    }
+
+    private FeedWatermark loadWatermark(String fileKey) {
+        if (watermarks.containsKey(fileKey)) {
+            return watermarks.get(fileKey);
+        }
+        FeedWatermark watermark = null;
+        Path watermarkFile = outputDir.resolve(fileKey + ".watermark");
+        if (Files.exists(watermarkFile)) {
+            try {
+                String[] parts = Files.readString(watermarkFile).trim().split("\t", 2);
+                if (parts.length == 2) {
+                    watermark = new FeedWatermark(Long.parseLong(parts[0]), parts[1]);
+                }
+            } catch (IOException | NumberFormatException e) {
+                System.err.println("[strategy] failed to read watermark: " + e.getMessage());
             }
         }
-        Files.writeString(knownFile, String.join("\n", hrefs));
+        watermarks.put(fileKey, watermark);
+        return watermark;
+    }
+
+    private void updateWatermark(String fileKey, List<LinkSnapshot> newLinks) {
+        FeedWatermark candidate = FeedWatermark.fromNewLinks(newLinks);
+        if (candidate == null || !candidate.isNewerThan(loadWatermark(fileKey))) {
+            return;
+        }
+        watermarks.put(fileKey, candidate);
+        Path watermarkFile = outputDir.resolve(fileKey + ".watermark");
+        try {
+            Files.writeString(watermarkFile, candidate.getPublishedAtMillis() + "\t" + candidate.getHref());
+        } catch (IOException e) {
+            System.err.println("[strategy] failed to update watermark: " + e.getMessage());
+        }
+    }
+
+    // Swift アプリが読むフィード単位の既知 URL 一覧。新規分だけを追記する
+    private void appendKnownCache(String feedKey, List<String> hrefs) throws IOException {
+        if (hrefs.isEmpty()) {
+            return;
+        }
+        Path knownFile = outputDir.resolve(feedKey + ".parquet.known");
+        boolean hasContent = Files.exists(knownFile) && Files.size(knownFile) > 0;
+        String content = (hasContent ? "\n" : "") + String.join("\n", hrefs);
+        Files.writeString(knownFile, content, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
     }
 
     private LinkRecord convertGroup(Group group) {
@@ -199,16 +823,27 @@ public final class LinkParquetWriter implements Closeable {
             String href = safeBinary(group, "href");
             String text = sanitize(safeBinary(group, "text"));
             String publishedAt = sanitize(safeBinary(group, "publishedAt"));
+            Long publishedAtMillis;
+            if (group.getType().containsField("publishedAtMillis") && group.getFieldRepetitionCount("publishedAtMillis") > 0) {
+                publishedAtMillis = group.getLong("publishedAtMillis", 0);
+            } else {
+                long parsed = PublishedAtParser.parseEpochMillis(publishedAt);
+                publishedAtMillis = parsed == PublishedAtParser.UNKNOWN ? null : parsed;
+            }
             long timestamp;
             try {
                 timestamp = group.getLong("timestampMillis", 0);
             } catch (Exception ex) {
                 timestamp = Instant.now().toEpochMilli();
             }
+            Long clusterId = null;
+            if (group.getType().containsField("clusterId") && group.getFieldRepetitionCount("clusterId") > 0) {
+                clusterId = group.getLong("clusterId", 0);
+            }
             if (href.isBlank()) {
                 return null;
             }
-            return new LinkRecord(siteId, pageUrl, href, text, publishedAt, timestamp);
+            return new LinkRecord(siteId, pageUrl, href, text, publishedAt, publishedAtMillis, timestamp, clusterId);
         } catch (Exception ex) {
             System.err.println("[strategy] skip corrupted parquet row: " + ex.getMessage());
             return null;
@@ -261,7 +896,18 @@ public final class LinkParquetWriter implements Closeable {
     }
 
     @Override
-    public void close() {
-        // no-op
+    public synchronized void close() {
+        closed = true;
+        for (LinkSink sink : sinks) {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                System.err.println("[strategy] failed to close " + sink.name() + " sink: " + e.getMessage());
+            }
+        }
+        sinks.clear();
+        if (leases != null) {
+            leases.close();
+        }
     }
 }
@@ -0,0 +1,56 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+public final class LinkRecord {
+    private final String siteId;
+    private final String pageUrl;
+    private final String href;
+    private final String text;
+    private final String publishedAt;
+    private final Long publishedAtMillis;
+    private final long timestampMillis;
+    private final Long clusterId;
+
+    public LinkRecord(String siteId, String pageUrl, String href, String text, String publishedAt,
+                      Long publishedAtMillis, long timestampMillis, Long clusterId) {
+        this.siteId = siteId;
+        this.pageUrl = pageUrl;
+        this.href = href;
+        this.text = text;
+        this.publishedAt = publishedAt;
+        this.publishedAtMillis = publishedAtMillis;
+        this.timestampMillis = timestampMillis;
+        this.clusterId = clusterId;
+    }
+
+    public String getSiteId() {
+        return siteId;
+    }
+
+    public String getPageUrl() {
+        return pageUrl;
+    }
+
+    public String getHref() {
+        return href;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getPublishedAt() {
+        return publishedAt;
+    }
+
+    public Long getPublishedAtMillis() {
+        return publishedAtMillis;
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public Long getClusterId() {
+        return clusterId;
+    }
+}
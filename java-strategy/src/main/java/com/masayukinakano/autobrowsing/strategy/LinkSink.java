@@ -0,0 +1,12 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+// LinkParquetWriter が重複排除した新規リンクを、Parquet とは別の形式へ流すための出力先
+public interface LinkSink extends Closeable {
+    String name();
+
+    void write(String siteId, String feedKey, List<LinkRecord> records) throws IOException;
+}
@@ -1,5 +1,6 @@
 package com.masayukinakano.autobrowsing.strategy;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public final class LinkSnapshot {
@@ -13,9 +14,21 @@ public final class LinkSnapshot {
     @JsonProperty("publishedAt")
     private String publishedAt;
 
+    @JsonIgnore
+    private long publishedAtMillis;
+
+    @JsonIgnore
+    private boolean publishedAtParsed;
+
     public LinkSnapshot() {
     }
 
+    public LinkSnapshot(String href, String text, String publishedAt) {
+        this.href = href;
+        this.text = text;
+        this.publishedAt = publishedAt;
+    }
+
     public String getHref() {
         return href;
     }
@@ -27,4 +40,13 @@ public final class LinkSnapshot {
     public String getPublishedAt() {
         return publishedAt;
     }
+
+    @JsonIgnore
+    public long getPublishedAtMillis() {
+        if (!publishedAtParsed) {
+            publishedAtMillis = PublishedAtParser.parseEpochMillis(publishedAt);
+            publishedAtParsed = true;
+        }
+        return publishedAtMillis;
+    }
 }
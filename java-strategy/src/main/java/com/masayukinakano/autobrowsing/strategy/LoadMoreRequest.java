@@ -5,6 +5,11 @@ import java.util.Collections;
 import java.util.List;
 
 public final class LoadMoreRequest {
+    public static final String STORE_ARTICLE = "storeArticle";
+
+    @JsonProperty("command")
+    private String command;
+
     @JsonProperty("siteId")
     private String siteId;
 
@@ -20,9 +25,16 @@ public final class LoadMoreRequest {
     @JsonProperty("links")
     private List<LinkSnapshot> links;
 
+    @JsonProperty("article")
+    private ArticlePayload article;
+
     public LoadMoreRequest() {
     }
 
+    public String getCommand() {
+        return command;
+    }
+
     public String getSiteId() {
         return siteId;
     }
@@ -42,4 +54,8 @@ public final class LoadMoreRequest {
     public List<LinkSnapshot> getLinks() {
         return links == null ? Collections.emptyList() : links;
     }
+
+    public ArticlePayload getArticle() {
+        return article;
+    }
 }
@@ -23,14 +23,23 @@ public final class LoadMoreResponse {
     @JsonProperty("waitSeconds")
     private final Double waitSeconds;
 
+    @JsonProperty("blobId")
+    private final String blobId;
+
     private LoadMoreResponse(boolean success, StrategyAction action, String message, AccessibilityQuery query,
                              Double scrollDistance, Double waitSeconds) {
+        this(success, action, message, query, scrollDistance, waitSeconds, null);
+    }
+
+    private LoadMoreResponse(boolean success, StrategyAction action, String message, AccessibilityQuery query,
+                             Double scrollDistance, Double waitSeconds, String blobId) {
         this.success = success;
         this.action = action;
         this.message = message;
         this.query = query;
         this.scrollDistance = scrollDistance;
         this.waitSeconds = waitSeconds;
+        this.blobId = blobId;
     }
 
     public static LoadMoreResponse press(AccessibilityQuery query) {
@@ -49,6 +58,10 @@ public final class LoadMoreResponse {
         return new LoadMoreResponse(true, StrategyAction.NO_ACTION, message, null, null, null);
     }
 
+    public static LoadMoreResponse stored(String blobId) {
+        return new LoadMoreResponse(true, StrategyAction.NO_ACTION, "Article stored", null, null, null, blobId);
+    }
+
     public static LoadMoreResponse error(String message) {
         return new LoadMoreResponse(false, StrategyAction.ERROR, message, null, null, null);
     }
@@ -76,4 +89,8 @@ public final class LoadMoreResponse {
     public Double getWaitSeconds() {
         return waitSeconds;
     }
+
+    public String getBlobId() {
+        return blobId;
+    }
 }
@@ -0,0 +1,169 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import java.util.Arrays;
+
+public final class NearDuplicateIndex {
+    private static final int BANDS = 6;
+    private static final int ROWS = HeadlineMinHash.SIGNATURE_SIZE / BANDS;
+    // 署名の下位 8bit だけを保持し、一致数から Jaccard 類似度を推定する（24 中 15 一致 ≒ 0.6）
+    private static final int MIN_MATCHING_ROWS = 15;
+    // 定型見出しでバケットが偏っても検索が線形にならないよう、各バンドは新しい順に上限件数だけ調べる
+    private static final int MAX_CANDIDATES_PER_BAND = 64;
+
+    private final BandTable[] bands = new BandTable[BANDS];
+    private byte[] sketches = new byte[1024 * HeadlineMinHash.SIGNATURE_SIZE];
+    private long[] clusterIds = new long[1024];
+    private int size;
+
+    public NearDuplicateIndex() {
+        for (int band = 0; band < BANDS; band++) {
+            bands[band] = new BandTable();
+        }
+    }
+
+    // 近い見出しが既にあればそのクラスタ ID を、なければ最初のメンバーの href から新しいクラスタ ID を作って登録する
+    public synchronized long assign(int[] signature, String href) {
+        Long match = findCluster(signature);
+        long clusterId = match != null ? match : newClusterId(href);
+        add(signature, clusterId);
+        return clusterId;
+    }
+
+    public synchronized void register(int[] signature, long clusterId) {
+        add(signature, clusterId);
+    }
+
+    public synchronized Long findCluster(int[] signature) {
+        int match = findNearest(signature);
+        return match >= 0 ? clusterIds[match] : null;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private int findNearest(int[] signature) {
+        int best = -1;
+        int bestMatches = MIN_MATCHING_ROWS - 1;
+        for (int band = 0; band < BANDS; band++) {
+            int key = bandKey(signature, band);
+            int examined = 0;
+            for (int candidate = bands[band].head(key);
+                 candidate >= 0 && examined < MAX_CANDIDATES_PER_BAND;
+                 candidate = bands[band].next(candidate), examined++) {
+                int matches = matchingRows(signature, candidate);
+                if (matches > bestMatches) {
+                    best = candidate;
+                    bestMatches = matches;
+                }
+            }
+        }
+        return best;
+    }
+
+    private int matchingRows(int[] signature, int candidate) {
+        int base = candidate * HeadlineMinHash.SIGNATURE_SIZE;
+        int matches = 0;
+        for (int i = 0; i < HeadlineMinHash.SIGNATURE_SIZE; i++) {
+            if (sketches[base + i] == (byte) signature[i]) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    private void add(int[] signature, long clusterId) {
+        if (size == clusterIds.length) {
+            clusterIds = Arrays.copyOf(clusterIds, size * 2);
+            sketches = Arrays.copyOf(sketches, size * 2 * HeadlineMinHash.SIGNATURE_SIZE);
+        }
+        int id = size++;
+        clusterIds[id] = clusterId;
+        int base = id * HeadlineMinHash.SIGNATURE_SIZE;
+        for (int i = 0; i < HeadlineMinHash.SIGNATURE_SIZE; i++) {
+            sketches[base + i] = (byte) signature[i];
+        }
+        for (int band = 0; band < BANDS; band++) {
+            bands[band].insert(bandKey(signature, band), id);
+        }
+    }
+
+    private static int bandKey(int[] signature, int band) {
+        long hash = band;
+        for (int row = band * ROWS; row < (band + 1) * ROWS; row++) {
+            hash = hash * 0x100000001b3L + signature[row];
+        }
+        return (int) HeadlineMinHash.mix(hash);
+    }
+
+    // 署名の一部から作ると無関係な見出し同士が同じ ID になりやすいため、一意な href の 64bit ハッシュを使う。
+    // 再起動後も同じ記事には同じ ID が振られる
+    public static long newClusterId(String href) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < href.length(); i++) {
+            hash = (hash ^ href.charAt(i)) * 0x100000001b3L;
+        }
+        return HeadlineMinHash.mix(hash);
+    }
+
+    // バンドごとのオープンアドレス表。同じキーのレコードは next 配列で連結する
+    private static final class BandTable {
+        private int[] slotKeys = new int[2048];
+        private int[] slotHeads = new int[2048];
+        private int[] recordNext = new int[1024];
+        private int used;
+
+        private BandTable() {
+            Arrays.fill(slotHeads, -1);
+        }
+
+        int head(int key) {
+            int slot = find(key);
+            return slotHeads[slot];
+        }
+
+        int next(int record) {
+            return recordNext[record];
+        }
+
+        void insert(int key, int record) {
+            if (record >= recordNext.length) {
+                recordNext = Arrays.copyOf(recordNext, Math.max(record + 1, recordNext.length * 2));
+            }
+            int slot = find(key);
+            if (slotHeads[slot] < 0) {
+                slotKeys[slot] = key;
+                used++;
+            }
+            recordNext[record] = slotHeads[slot];
+            slotHeads[slot] = record;
+            if (used * 2 > slotKeys.length) {
+                rehash();
+            }
+        }
+
+        private int find(int key) {
+            int mask = slotKeys.length - 1;
+            int slot = key & mask;
+            while (slotHeads[slot] >= 0 && slotKeys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void rehash() {
+            int[] oldKeys = slotKeys;
+            int[] oldHeads = slotHeads;
+            slotKeys = new int[oldKeys.length * 2];
+            slotHeads = new int[oldKeys.length * 2];
+            Arrays.fill(slotHeads, -1);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldHeads[i] >= 0) {
+                    int slot = find(oldKeys[i]);
+                    slotKeys[slot] = oldKeys[i];
+                    slotHeads[slot] = oldHeads[i];
+                }
+            }
+        }
+    }
+}
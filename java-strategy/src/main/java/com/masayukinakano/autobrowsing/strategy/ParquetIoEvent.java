@@ -0,0 +1,30 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.masayukinakano.autobrowsing.ParquetIo")
+@Label("Parquet I/O")
+@Category({"AutoBrowsing", "Links"})
+final class ParquetIoEvent extends Event {
+    static final String READ = "read";
+    static final String READ_HREFS = "readHrefs";
+    static final String READ_HEADLINES = "readHeadlines";
+    static final String WRITE = "write";
+
+    @Label("Operation")
+    String operation;
+
+    @Label("File")
+    String file;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("File Size")
+    @DataAmount
+    long bytes;
+}
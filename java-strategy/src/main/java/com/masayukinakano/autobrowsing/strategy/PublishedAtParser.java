@@ -0,0 +1,126 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+public final class PublishedAtParser {
+    public static final long UNKNOWN = Long.MIN_VALUE;
+
+    private static final DateTimeFormatter SPACED_DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm[:ss]", Locale.ROOT);
+    private static final DateTimeFormatter SLASHED_DATE_TIME = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm[:ss]", Locale.ROOT);
+    private static final DateTimeFormatter SLASHED_DATE = DateTimeFormatter.ofPattern("yyyy/MM/dd", Locale.ROOT);
+
+    private PublishedAtParser() {
+    }
+
+    public static long parseEpochMillis(String value) {
+        if (value == null) {
+            return UNKNOWN;
+        }
+        String trimmed = value.trim();
+        if (trimmed.isEmpty()) {
+            return UNKNOWN;
+        }
+        if (isDigits(trimmed)) {
+            return parseEpochNumber(trimmed);
+        }
+        // 書式を順に試して例外で次へ進むと 1 リンクあたり最大数回の例外になるので、文字列の形で書式を 1 つに決める
+        try {
+            if (!isDatePrefix(trimmed)) {
+                // "Fri, 16 Oct 2026 09:00:00 GMT" のような RFC 1123 形式
+                if (!isRfc1123Shape(trimmed)) {
+                    return UNKNOWN;
+                }
+                return Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(trimmed)).toEpochMilli();
+            }
+            char separator = trimmed.charAt(4);
+            if (trimmed.length() == 10) {
+                DateTimeFormatter formatter = separator == '-' ? DateTimeFormatter.ISO_LOCAL_DATE : SLASHED_DATE;
+                return LocalDate.parse(trimmed, formatter).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli();
+            }
+            char timeSeparator = trimmed.charAt(10);
+            if (separator == '-' && timeSeparator == 'T' && hasZone(trimmed)) {
+                return Instant.from(DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(trimmed)).toEpochMilli();
+            }
+            // タイムゾーンを持たない表記は UTC とみなす
+            DateTimeFormatter formatter;
+            if (separator == '-' && timeSeparator == 'T') {
+                formatter = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+            } else if (timeSeparator == ' ') {
+                formatter = separator == '-' ? SPACED_DATE_TIME : SLASHED_DATE_TIME;
+            } else {
+                return UNKNOWN;
+            }
+            return LocalDateTime.parse(trimmed, formatter).toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException ignored) {
+            return UNKNOWN;
+        }
+    }
+
+    // 先頭が yyyy-MM-dd または yyyy/MM/dd の形か
+    private static boolean isDatePrefix(String value) {
+        if (value.length() < 10) {
+            return false;
+        }
+        char separator = value.charAt(4);
+        if ((separator != '-' && separator != '/') || value.charAt(7) != separator) {
+            return false;
+        }
+        for (int i = 0; i < 10; i++) {
+            if (i != 4 && i != 7 && !Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // 曜日 + カンマ、または日付の数字で始まり、時刻のコロンを含むか
+    private static boolean isRfc1123Shape(String value) {
+        if (value.length() < 16 || value.indexOf(':') < 0) {
+            return false;
+        }
+        char first = value.charAt(0);
+        if (Character.isLetter(first)) {
+            return value.charAt(3) == ',';
+        }
+        return Character.isDigit(first) && (value.charAt(1) == ' ' || value.charAt(2) == ' ');
+    }
+
+    // 時刻部分の後ろに Z か +hh:mm / -hh:mm が付いているか
+    private static boolean hasZone(String value) {
+        char last = value.charAt(value.length() - 1);
+        if (last == 'Z' || last == 'z') {
+            return true;
+        }
+        for (int i = 11; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '+' || c == '-') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long parseEpochNumber(String digits) {
+        if (digits.length() > 18) {
+            return UNKNOWN;
+        }
+        long number = Long.parseLong(digits);
+        // 10 桁以下は秒単位の UNIX 時刻とみなす
+        return digits.length() <= 10 ? number * 1000L : number;
+    }
+
+    private static boolean isDigits(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,25 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.masayukinakano.autobrowsing.RequestDecode")
+@Label("Request Decode")
+@Category({"AutoBrowsing", "Strategy Server"})
+final class RequestDecodeEvent extends Event {
+    @Label("Site")
+    String siteId;
+
+    @Label("Command")
+    String command;
+
+    @Label("Payload Size")
+    @DataAmount
+    long payloadBytes;
+
+    @Label("Link Count")
+    int linkCount;
+}
@@ -0,0 +1,59 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+final class ResponseBuffer extends OutputStream {
+    private byte[] buffer;
+    private ByteBuffer view;
+    private int count;
+
+    ResponseBuffer(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+        this.view = ByteBuffer.wrap(buffer);
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] source, int offset, int length) {
+        ensureCapacity(count + length);
+        System.arraycopy(source, offset, buffer, count, length);
+        count += length;
+    }
+
+    void reset() {
+        count = 0;
+    }
+
+    byte[] array() {
+        return buffer;
+    }
+
+    int size() {
+        return count;
+    }
+
+    void writeTo(WritableByteChannel channel) throws IOException {
+        view.clear();
+        view.limit(count);
+        while (view.hasRemaining()) {
+            channel.write(view);
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= buffer.length) {
+            return;
+        }
+        buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+        view = ByteBuffer.wrap(buffer);
+    }
+}
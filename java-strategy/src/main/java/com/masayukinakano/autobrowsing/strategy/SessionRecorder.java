@@ -0,0 +1,80 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.zip.GZIPOutputStream;
+
+public final class SessionRecorder implements Closeable {
+    public static final char INBOUND = '>';
+    public static final char OUTBOUND = '<';
+
+    private final Path file;
+    private final OutputStream output;
+    private final long startNanos = System.nanoTime();
+
+    private SessionRecorder(Path file) throws IOException {
+        this.file = file;
+        // アプリは SIGTERM でサーバを止めるため、1 行ごとに sync flush して途中までのキャプチャを読めるようにする
+        this.output = new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(file), 64 * 1024, true), 64 * 1024);
+    }
+
+    public static SessionRecorder open(Path target) throws IOException {
+        Path file = target;
+        if (Files.isDirectory(target)) {
+            file = target.resolve("session-" + Instant.now().toEpochMilli() + ".log.gz");
+        } else if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        return new SessionRecorder(file);
+    }
+
+    public static SessionRecorder openFromEnvironment() {
+        String override = System.getenv("AUTO_BROWSING_CAPTURE");
+        if (override == null || override.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            SessionRecorder recorder = open(Path.of(override.trim()).toAbsolutePath());
+            System.err.println("[strategy] capturing session to " + recorder.file);
+            return recorder;
+        } catch (IOException e) {
+            System.err.println("[strategy] failed to open session capture: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void recordInbound(byte[] buffer, int offset, int length) {
+        record(INBOUND, buffer, offset, length);
+    }
+
+    public void recordOutbound(byte[] buffer, int offset, int length) {
+        record(OUTBOUND, buffer, offset, length);
+    }
+
+    // 1 行 = 経過ミリ秒 \t 方向 \t ペイロード
+    private synchronized void record(char direction, byte[] buffer, int offset, int length) {
+        try {
+            long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000L;
+            output.write(Long.toString(elapsedMillis).getBytes(StandardCharsets.US_ASCII));
+            output.write('\t');
+            output.write(direction);
+            output.write('\t');
+            output.write(buffer, offset, length);
+            output.write('\n');
+            output.flush();
+        } catch (IOException e) {
+            System.err.println("[strategy] failed to record session line: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        output.close();
+    }
+}
@@ -0,0 +1,250 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+public final class SessionReplay {
+    private static final byte[] ERROR_PREFIX = "{\"success\":false".getBytes(StandardCharsets.US_ASCII);
+
+    private final StrategyServer server;
+    private final double speed;
+
+    private long[] latencies = new long[1024];
+    private int requestCount;
+    private int errorCount;
+
+    public SessionReplay(StrategyServer server, double speed) {
+        this.server = server;
+        this.speed = speed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            printUsage();
+            return;
+        }
+        FlightRecording.startFromArguments(args);
+        if ("generate".equals(args[0])) {
+            generate(args);
+        } else if ("replay".equals(args[0])) {
+            replay(args);
+        } else {
+            printUsage();
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("usage: SessionReplay replay <session.log.gz>... [--speed 1|N|max] [--output DIR] [--sinks arrow] [--no-persist] [--jfr[=PATH]]");
+        System.err.println("       SessionReplay generate <out.log.gz> [--site bloomberg|marketwatch] [--requests N]"
+            + " [--links-per-page N] [--new-links N] [--interval-ms N] [--seed N]");
+    }
+
+    private static void generate(String[] args) throws IOException {
+        if (args.length < 2) {
+            printUsage();
+            return;
+        }
+        Path output = Path.of(args[1]);
+        String site = option(args, "--site", "bloomberg");
+        int requests = Integer.parseInt(option(args, "--requests", "20000"));
+        int linksPerPage = Integer.parseInt(option(args, "--links-per-page", "120"));
+        int newLinks = Integer.parseInt(option(args, "--new-links", "50"));
+        long interval = Long.parseLong(option(args, "--interval-ms", "1500"));
+        long seed = Long.parseLong(option(args, "--seed", "42"));
+
+        SyntheticSessionGenerator generator = new SyntheticSessionGenerator(seed, linksPerPage, newLinks, interval);
+        long started = System.nanoTime();
+        long links = generator.generate(output, site, requests);
+        System.err.printf("[replay] generated %d requests / %d links (%d unique) for %s in %.1fs -> %s%n",
+            requests, links, (long) requests * newLinks, site, (System.nanoTime() - started) / 1e9, output);
+    }
+
+    private static void replay(String[] args) throws IOException {
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 1; i < args.length && !args[i].startsWith("--"); i++) {
+            inputs.add(Path.of(args[i]));
+        }
+        if (inputs.isEmpty()) {
+            printUsage();
+            return;
+        }
+        String speedOption = option(args, "--speed", "max");
+        double speed = "max".equalsIgnoreCase(speedOption) ? 0 : Double.parseDouble(speedOption);
+
+        LinkParquetWriter writer = null;
+        ArticleBlobStore articleStore = null;
+        if (!hasFlag(args, "--no-persist")) {
+            String output = option(args, "--output", null);
+            Path outputDir = output != null ? Path.of(output) : Files.createTempDirectory("replay-links");
+            writer = LinkParquetWriter.open(outputDir, option(args, "--sinks", null));
+            articleStore = ArticleBlobStore.open(outputDir.resolve("article-store"));
+        }
+        StrategyServer server = new StrategyServer(StrategyServer.createObjectMapper(),
+            StrategyRegistry.defaultRegistry(), writer, articleStore, null);
+        SessionReplay replay = new SessionReplay(server, speed);
+        try {
+            for (Path input : inputs) {
+                replay.run(input);
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    public void run(Path session) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        ResponseBuffer response = new ResponseBuffer(64 * 1024);
+        long[] allocated = new long[1];
+        long[] bytesIn = new long[1];
+        int before = requestCount;
+        int errorsBefore = errorCount;
+        long started = System.nanoTime();
+
+        TruncatedGzipInput input = new TruncatedGzipInput(new GZIPInputStream(Files.newInputStream(session), 64 * 1024));
+        try (ReadableByteChannel channel = Channels.newChannel(input)) {
+            new LineFrameReader(channel, 64 * 1024).readAll((buffer, offset, length) -> {
+                int end = offset + length;
+                int tab = offset;
+                long offsetMillis = 0;
+                while (tab < end && buffer[tab] != '\t') {
+                    offsetMillis = offsetMillis * 10 + (buffer[tab++] - '0');
+                }
+                if (tab + 2 >= end || buffer[tab + 1] != SessionRecorder.INBOUND) {
+                    return true;
+                }
+                int payloadOffset = tab + 3;
+                int payloadLength = end - payloadOffset;
+                if (StrategyServer.isQuit(buffer, payloadOffset, payloadLength)) {
+                    return true;
+                }
+                pace(offsetMillis, started);
+                bytesIn[0] += payloadLength;
+                long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+                long requestStarted = System.nanoTime();
+                server.handleFrame(buffer, payloadOffset, payloadLength, response);
+                record(System.nanoTime() - requestStarted);
+                allocated[0] += threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                if (isError(response)) {
+                    errorCount++;
+                }
+                response.reset();
+                return true;
+            });
+        }
+        if (input.truncated) {
+            System.err.println("[replay] " + session.getFileName() + " ends without gzip trailer,"
+                + " replayed the complete lines before it");
+        }
+
+        report(session, before, errorCount - errorsBefore, bytesIn[0], System.nanoTime() - started, allocated[0]);
+    }
+
+    int getErrorCount() {
+        return errorCount;
+    }
+
+    // 強制終了されたキャプチャは gzip のトレーラがなく EOFException になる。そこで入力の終わりとして扱う
+    private static final class TruncatedGzipInput extends FilterInputStream {
+        private boolean truncated;
+
+        private TruncatedGzipInput(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (truncated) {
+                return -1;
+            }
+            try {
+                return super.read(buffer, offset, length);
+            } catch (EOFException e) {
+                truncated = true;
+                return -1;
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            return truncated ? 0 : super.available();
+        }
+    }
+
+    private static boolean isError(ResponseBuffer response) {
+        if (response.size() < ERROR_PREFIX.length) {
+            return false;
+        }
+        return Arrays.equals(response.array(), 0, ERROR_PREFIX.length, ERROR_PREFIX, 0, ERROR_PREFIX.length);
+    }
+
+    private void pace(long offsetMillis, long startedNanos) {
+        if (speed <= 0) {
+            return;
+        }
+        long dueNanos = startedNanos + (long) (offsetMillis * 1_000_000L / speed);
+        long waitNanos = dueNanos - System.nanoTime();
+        if (waitNanos > 0) {
+            try {
+                Thread.sleep(waitNanos / 1_000_000L, (int) (waitNanos % 1_000_000L));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void record(long nanos) {
+        if (requestCount == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+        latencies[requestCount++] = nanos;
+    }
+
+    private void report(Path session, int firstRequest, int errors, long bytesIn, long elapsedNanos, long allocated) {
+        int requests = requestCount - firstRequest;
+        long[] sorted = Arrays.copyOfRange(latencies, firstRequest, requestCount);
+        Arrays.sort(sorted);
+        double seconds = elapsedNanos / 1e9;
+        System.err.printf("[replay] %s: %d requests in %.2fs (%.1f req/s, %.1f MB/s in), errors=%d%n",
+            session.getFileName(), requests, seconds, requests / seconds, bytesIn / seconds / (1024 * 1024), errors);
+        System.err.printf("[replay] latency p50=%.3fms p99=%.3fms max=%.3fms%n",
+            percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6,
+            (sorted.length == 0 ? 0 : sorted[sorted.length - 1]) / 1e6);
+        System.err.printf("[replay] allocated while handling %.1f MB (%.1f MB/s, %.1f KB/request)%n",
+            allocated / (1024.0 * 1024), allocated / seconds / (1024 * 1024),
+            requests == 0 ? 0 : allocated / 1024.0 / requests);
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i < args.length - 1; i++) {
+            if (name.equals(args[i])) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    private static boolean hasFlag(String[] args, String name) {
+        return Arrays.asList(args).contains(name);
+    }
+}
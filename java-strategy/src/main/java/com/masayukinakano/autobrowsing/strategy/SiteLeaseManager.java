@@ -0,0 +1,219 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// 共有出力ディレクトリ上でサイト単位の書き込み権をノード間で分け合うためのリース
+public final class SiteLeaseManager implements Closeable {
+    public static final String DIRECTORY_NAME = "_leases";
+    public static final long NO_LEASE = -1L;
+
+    private static final long DEFAULT_TTL_MILLIS = 60_000L;
+
+    private final Path leaseDir;
+    private final String nodeId;
+    private final long ttlMillis;
+    private final Map<String, Lease> held = new HashMap<>();
+    private final Map<String, String> foreignOwners = new HashMap<>();
+    private final ScheduledExecutorService heartbeat;
+
+    public SiteLeaseManager(Path outputDir, String nodeId, long ttlMillis) throws IOException {
+        this.leaseDir = outputDir.resolve(DIRECTORY_NAME);
+        this.nodeId = nodeId;
+        this.ttlMillis = ttlMillis;
+        Files.createDirectories(leaseDir);
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "site-lease-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, ttlMillis / 3);
+        heartbeat.scheduleAtFixedRate(this::renewAll, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public static SiteLeaseManager openDefault(Path outputDir) throws IOException {
+        String nodeId = System.getenv("AUTO_BROWSING_NODE_ID");
+        if (nodeId == null || nodeId.isBlank()) {
+            nodeId = defaultNodeId();
+        }
+        long ttlMillis = DEFAULT_TTL_MILLIS;
+        String ttl = System.getenv("AUTO_BROWSING_LEASE_TTL_SECONDS");
+        if (ttl != null && !ttl.isBlank()) {
+            try {
+                ttlMillis = Long.parseLong(ttl.trim()) * 1000L;
+            } catch (NumberFormatException e) {
+                System.err.println("[strategy] invalid AUTO_BROWSING_LEASE_TTL_SECONDS: " + ttl);
+            }
+        }
+        System.err.println("[strategy] site leases as node " + nodeId.trim() + " (ttl " + ttlMillis / 1000 + "s)");
+        return new SiteLeaseManager(outputDir, nodeId.trim(), ttlMillis);
+    }
+
+    // 同じマシンのサーバとバックフィルが互いのリースを奪わないよう、既定ではプロセスごとに一意な ID を使う
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "node";
+        }
+        return host + ":" + ProcessHandle.current().pid() + ":"
+            + Long.toHexString(ThreadLocalRandom.current().nextLong() & 0xFFFFFFL);
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    // 保持中ならそのトークン、取得できればインクリメントした新しいトークン、他ノードが保持中なら NO_LEASE
+    public synchronized long acquire(String siteKey) {
+        long now = Instant.now().toEpochMilli();
+        Lease current = held.get(siteKey);
+        if (current != null && current.expiresAtMillis - now > ttlMillis / 2) {
+            return current.token;
+        }
+        try {
+            Lease lease = lockAndUpdate(siteKey, now, current);
+            if (lease == null) {
+                held.remove(siteKey);
+                return NO_LEASE;
+            }
+            if (current == null || current.token != lease.token) {
+                System.err.println("[strategy] acquired lease for " + siteKey + " (token " + lease.token + ")");
+            }
+            held.put(siteKey, lease);
+            foreignOwners.remove(siteKey);
+            return lease.token;
+        } catch (IOException e) {
+            System.err.println("[strategy] failed to acquire lease for " + siteKey + ": " + e.getMessage());
+            held.remove(siteKey);
+            return NO_LEASE;
+        }
+    }
+
+    // 直近の取得で他ノードが保持していた場合、そのノード ID。取得できていれば null
+    public synchronized String foreignOwner(String siteKey) {
+        return foreignOwners.get(siteKey);
+    }
+
+    public synchronized boolean isHeld(String siteKey, long token) {
+        Lease lease = held.get(siteKey);
+        return lease != null && lease.token == token && lease.expiresAtMillis > Instant.now().toEpochMilli();
+    }
+
+    private synchronized void renewAll() {
+        long now = Instant.now().toEpochMilli();
+        for (Map.Entry<String, Lease> entry : new ArrayList<>(held.entrySet())) {
+            try {
+                Lease renewed = lockAndUpdate(entry.getKey(), now, entry.getValue());
+                if (renewed == null || renewed.token != entry.getValue().token) {
+                    System.err.println("[strategy] lost lease for " + entry.getKey());
+                    held.remove(entry.getKey());
+                } else {
+                    held.put(entry.getKey(), renewed);
+                }
+            } catch (IOException e) {
+                System.err.println("[strategy] failed to renew lease for " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // .lock のファイルロック内でリースを読み、期限切れか自ノードのものなら書き換える
+    private Lease lockAndUpdate(String siteKey, long now, Lease current) throws IOException {
+        Path lockFile = leaseDir.resolve(siteKey + ".lock");
+        Path leaseFile = leaseDir.resolve(siteKey + ".lease");
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock ignored = channel.lock()) {
+            Lease existing = readLease(leaseFile);
+            long token;
+            if (existing == null) {
+                token = 1;
+            } else if (current != null && existing.token == current.token && nodeId.equals(existing.nodeId)) {
+                token = existing.token;
+            } else if (existing.expiresAtMillis <= now) {
+                // 解放済み（close で期限を現在時刻にしたもの）か期限切れのリースだけを引き継ぐ
+                token = existing.token + 1;
+            } else {
+                if (!existing.nodeId.equals(foreignOwners.put(siteKey, existing.nodeId))) {
+                    System.err.println("[strategy] site " + siteKey + " is leased by " + existing.nodeId
+                        + " until " + Instant.ofEpochMilli(existing.expiresAtMillis));
+                }
+                return null;
+            }
+            Lease lease = new Lease(nodeId, token, now + ttlMillis);
+            writeLease(leaseFile, lease);
+            return lease;
+        }
+    }
+
+    private static Lease readLease(Path leaseFile) throws IOException {
+        if (!Files.exists(leaseFile)) {
+            return null;
+        }
+        String[] parts = Files.readString(leaseFile, StandardCharsets.UTF_8).trim().split("\t");
+        // 壊れたリースからトークンを振り直すとフェンシングが効かなくなるため、取得自体を失敗させる
+        if (parts.length == 3) {
+            try {
+                return new Lease(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            } catch (NumberFormatException e) {
+                throw new IOException("malformed lease file " + leaseFile.getFileName(), e);
+            }
+        }
+        throw new IOException("malformed lease file " + leaseFile.getFileName());
+    }
+
+    private static void writeLease(Path leaseFile, Lease lease) throws IOException {
+        Path temp = leaseFile.resolveSibling(leaseFile.getFileName() + ".tmp");
+        Files.writeString(temp, lease.nodeId + "\t" + lease.token + "\t" + lease.expiresAtMillis, StandardCharsets.UTF_8);
+        Files.move(temp, leaseFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // 期限を現在時刻に縮めて手放す。トークンは残すので次の取得者は必ず大きい値を得る
+    @Override
+    public synchronized void close() {
+        heartbeat.shutdownNow();
+        long now = Instant.now().toEpochMilli();
+        for (Map.Entry<String, Lease> entry : held.entrySet()) {
+            Path lockFile = leaseDir.resolve(entry.getKey() + ".lock");
+            Path leaseFile = leaseDir.resolve(entry.getKey() + ".lease");
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = channel.lock()) {
+                Lease existing = readLease(leaseFile);
+                if (existing != null && existing.token == entry.getValue().token && nodeId.equals(existing.nodeId)) {
+                    writeLease(leaseFile, new Lease(nodeId, existing.token, now));
+                }
+            } catch (IOException e) {
+                System.err.println("[strategy] failed to release lease for " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+        held.clear();
+    }
+
+    private static final class Lease {
+        private final String nodeId;
+        private final long token;
+        private final long expiresAtMillis;
+
+        private Lease(String nodeId, long token, long expiresAtMillis) {
+            this.nodeId = nodeId;
+            this.token = token;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.masayukinakano.autobrowsing.StrategyEvaluation")
+@Label("Strategy Evaluation")
+@Category({"AutoBrowsing", "Strategy Server"})
+final class StrategyEvaluationEvent extends Event {
+    @Label("Site")
+    String siteId;
+
+    @Label("Strategy")
+    String strategy;
+
+    @Label("Action")
+    String action;
+}
@@ -37,8 +37,29 @@ public final class StrategyRegistry {
     }
 
     public LoadMoreResponse handle(LoadMoreRequest request) {
-        LoadMoreStrategy strategy = findStrategy(request);
-        return strategy.evaluate(request);
+        return handle(request, null);
+    }
+
+    public LoadMoreResponse handle(LoadMoreRequest request, FeedWatermark watermark) {
+        StrategyEvaluationEvent event = new StrategyEvaluationEvent();
+        event.begin();
+        Class<?> strategyClass;
+        LoadMoreResponse response;
+        if (watermark != null && watermark.isCrossedBy(request.getLinks())) {
+            strategyClass = FeedWatermark.class;
+            response = LoadMoreResponse.none("Caught up with previous crawl at " + watermark);
+        } else {
+            LoadMoreStrategy strategy = findStrategy(request);
+            strategyClass = strategy.getClass();
+            response = strategy.evaluate(request);
+        }
+        if (event.shouldCommit()) {
+            event.siteId = request.getSiteId();
+            event.strategy = strategyClass.getName();
+            event.action = response.getAction() == null ? null : response.getAction().name();
+            event.commit();
+        }
+        return response;
     }
 
     private LoadMoreStrategy findStrategy(LoadMoreRequest request) {
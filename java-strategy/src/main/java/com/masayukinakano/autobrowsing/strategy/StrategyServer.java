@@ -1,30 +1,61 @@
 package com.masayukinakano.autobrowsing.strategy;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import java.io.BufferedReader;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
 public final class StrategyServer {
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+    private static final byte[] QUIT = "quit".getBytes(StandardCharsets.US_ASCII);
+
     private final ObjectMapper mapper;
+    private final ObjectReader requestReader;
+    private final ObjectWriter responseWriter;
     private final StrategyRegistry registry;
     private final LinkParquetWriter linkWriter;
+    private final ArticleBlobStore articleStore;
+    private final SessionRecorder recorder;
 
     public StrategyServer(ObjectMapper mapper, StrategyRegistry registry, LinkParquetWriter linkWriter) {
+        this(mapper, registry, linkWriter, null, null);
+    }
+
+    public StrategyServer(ObjectMapper mapper, StrategyRegistry registry, LinkParquetWriter linkWriter,
+                          ArticleBlobStore articleStore, SessionRecorder recorder) {
         this.mapper = mapper;
+        this.requestReader = mapper.readerFor(LoadMoreRequest.class);
+        this.responseWriter = mapper.writerFor(LoadMoreResponse.class);
         this.registry = registry;
         this.linkWriter = linkWriter;
+        this.articleStore = articleStore;
+        this.recorder = recorder;
     }
 
     public StrategyServer() {
-        this(createObjectMapper(), StrategyRegistry.defaultRegistry(), safeOpenDefaultWriter());
+        this(createObjectMapper(), StrategyRegistry.defaultRegistry(), safeOpenDefaultWriter(),
+            safeOpenDefaultArticleStore(), SessionRecorder.openFromEnvironment());
+    }
+
+    private static ArticleBlobStore safeOpenDefaultArticleStore() {
+        try {
+            return ArticleBlobStore.openDefault();
+        } catch (Exception e) {
+            System.err.println("[strategy] failed to initialise article store: " + e.getMessage());
+            return null;
+        }
     }
 
     private static LinkParquetWriter safeOpenDefaultWriter() {
@@ -36,93 +67,177 @@ public final class StrategyServer {
         }
     }
 
-    private static ObjectMapper createObjectMapper() {
+    static ObjectMapper createObjectMapper() {
         ObjectMapper mapper = new ObjectMapper();
         mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
         return mapper;
     }
 
     public static void main(String[] args) throws IOException {
+        // サブコマンドの記録はそれぞれの main で開始する（gradle のタスクから直接起動されても有効にするため）
+        if (args.length > 0 && ArchiveBackfill.COMMAND.equals(args[0])) {
+            ArchiveBackfill.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && ArticleImport.COMMAND.equals(args[0])) {
+            ArticleImport.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        FlightRecording.startFromArguments(args);
         new StrategyServer().run();
     }
 
     public void run() throws IOException {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
-             PrintWriter writer = new PrintWriter(System.out, true, StandardCharsets.UTF_8)) {
+        try (FileChannel in = new FileInputStream(FileDescriptor.in).getChannel();
+             FileChannel out = new FileOutputStream(FileDescriptor.out).getChannel()) {
+            run(in, out);
+        }
+    }
 
-            writer.println(safeGreeting());
+    public void run(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        LineFrameReader frames = new LineFrameReader(in, INITIAL_BUFFER_SIZE);
+        ResponseBuffer response = new ResponseBuffer(INITIAL_BUFFER_SIZE);
+        try {
+            encodeGreeting(response);
+            respond(response, out);
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String trimmed = line.trim();
-                if (trimmed.isEmpty()) {
-                    continue;
+            frames.readAll((buffer, offset, length) -> {
+                if (recorder != null) {
+                    recorder.recordInbound(buffer, offset, length);
                 }
-                if ("quit".equalsIgnoreCase(trimmed)) {
-                    writer.println(safeShutdown());
-                    break;
+                if (isQuit(buffer, offset, length)) {
+                    encodeShutdown(response);
+                    respond(response, out);
+                    return false;
                 }
-                writer.println(handleRequest(trimmed));
+                handleFrame(buffer, offset, length, response);
+                respond(response, out);
+                return true;
+            });
+        } finally {
+            close();
+        }
+    }
+
+    private void respond(ResponseBuffer response, WritableByteChannel out) throws IOException {
+        response.write('\n');
+        if (recorder != null) {
+            recorder.recordOutbound(response.array(), 0, response.size() - 1);
+        }
+        response.writeTo(out);
+        response.reset();
+    }
+
+    // 大文字小文字を問わずフレーム全体が "quit" のときだけ終了する（SessionReplay も同じ判定でスキップする）
+    static boolean isQuit(byte[] buffer, int offset, int length) {
+        if (length != QUIT.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if ((buffer[offset + i] | 0x20) != QUIT[i]) {
+                return false;
             }
         }
+        return true;
+    }
+
+    void close() throws IOException {
         if (linkWriter != null) {
             linkWriter.close();
         }
+        if (articleStore != null) {
+            articleStore.close();
+        }
+        if (recorder != null) {
+            recorder.close();
+        }
     }
 
-    private String handleRequest(String jsonLine) {
+    void handleFrame(byte[] buffer, int offset, int length, ResponseBuffer out) {
         try {
-            LoadMoreRequest request = mapper.readValue(jsonLine, LoadMoreRequest.class);
+            RequestDecodeEvent decodeEvent = new RequestDecodeEvent();
+            decodeEvent.begin();
+            LoadMoreRequest request = requestReader.readValue(buffer, offset, length);
+            if (decodeEvent.shouldCommit()) {
+                decodeEvent.siteId = request.getSiteId();
+                decodeEvent.command = request.getCommand();
+                decodeEvent.payloadBytes = length;
+                decodeEvent.linkCount = request.getLinks() == null ? 0 : request.getLinks().size();
+                decodeEvent.commit();
+            }
+            if (LoadMoreRequest.STORE_ARTICLE.equals(request.getCommand())) {
+                responseWriter.writeValue(out, storeArticle(request));
+                return;
+            }
+            FeedWatermark watermark = null;
             if (linkWriter != null) {
+                watermark = linkWriter.getWatermark(request.getSiteId(), request.getUrl());
                 try {
                     linkWriter.writeLinks(request.getSiteId(), request.getUrl(), request.getLinks());
                 } catch (Exception linkError) {
                     System.err.println("[strategy] failed to persist links: " + linkError.getMessage());
                 }
+                // リンクを保存できないノードでクロールを続けても取りこぼすだけなので、クライアントを止める
+                String holder = linkWriter.leaseHolder(request.getSiteId());
+                if (holder != null) {
+                    responseWriter.writeValue(out, LoadMoreResponse.error("Site " + request.getSiteId()
+                        + " is leased by " + holder + "; links are not saved on this node"));
+                    return;
+                }
             }
-            LoadMoreResponse response = registry.handle(request);
-            return mapper.writeValueAsString(response);
+            LoadMoreResponse response = registry.handle(request, watermark);
+            responseWriter.writeValue(out, response);
         } catch (Exception ex) {
-            return encodeError(ex.getMessage());
+            out.reset();
+            encodeError(ex.getMessage(), out);
         }
     }
 
-    private String safeGreeting() {
-        try {
-            return encodeGreeting();
-        } catch (JsonProcessingException e) {
-            return encodeError(e.getMessage());
+    private LoadMoreResponse storeArticle(LoadMoreRequest request) throws IOException {
+        ArticlePayload article = request.getArticle();
+        if (article == null || article.getContent() == null) {
+            return LoadMoreResponse.error("storeArticle requires article.content");
         }
-    }
-
-    private String safeShutdown() {
-        try {
-            return encodeShutdown();
-        } catch (JsonProcessingException e) {
-            return encodeError(e.getMessage());
+        if (articleStore == null) {
+            return LoadMoreResponse.error("Article store unavailable");
         }
+        String blobId = articleStore.store(request.getSiteId(), article.getArticleId(), article.getContentType(),
+            article.getContent().getBytes(StandardCharsets.UTF_8));
+        return LoadMoreResponse.stored(blobId);
     }
 
-    private String encodeGreeting() throws JsonProcessingException {
+    private void encodeGreeting(ResponseBuffer out) {
         Map<String, Object> payload = new HashMap<>();
         payload.put("event", "hello");
         payload.put("name", "load-more-strategy");
         payload.put("timestamp", Instant.now().toString());
-        return mapper.writeValueAsString(payload);
+        encodeEvent(payload, out);
     }
 
-    private String encodeShutdown() throws JsonProcessingException {
+    private void encodeShutdown(ResponseBuffer out) {
         Map<String, Object> payload = new HashMap<>();
         payload.put("event", "shutdown");
         payload.put("timestamp", Instant.now().toString());
-        return mapper.writeValueAsString(payload);
+        encodeEvent(payload, out);
+    }
+
+    private void encodeEvent(Map<String, Object> payload, ResponseBuffer out) {
+        try {
+            mapper.writeValue(out, payload);
+        } catch (IOException e) {
+            out.reset();
+            encodeError(e.getMessage(), out);
+        }
     }
 
-    private String encodeError(String message) {
+    private void encodeError(String message, ResponseBuffer out) {
         try {
-            return mapper.writeValueAsString(LoadMoreResponse.error(message));
-        } catch (JsonProcessingException e) {
-            return "{\"success\":false,\"action\":\"ERROR\",\"message\":\"" + sanitize(message) + "\"}";
+            responseWriter.writeValue(out, LoadMoreResponse.error(message));
+        } catch (IOException e) {
+            out.reset();
+            byte[] fallback = ("{\"success\":false,\"action\":\"ERROR\",\"message\":\"" + sanitize(message) + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+            out.write(fallback, 0, fallback.length);
         }
     }
 
@@ -0,0 +1,143 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+public final class SyntheticSessionGenerator {
+
+    private static final List<String> BLOOMBERG_FEEDS = List.of(
+        "markets", "economics", "technology", "politics", "wealth", "green", "crypto"
+    );
+
+    private static final List<String> MARKETWATCH_FEEDS = List.of(
+        "latest-news", "markets", "investing", "economy-politics", "personal-finance"
+    );
+
+    private static final List<String> WORDS = List.of(
+        "stocks", "bonds", "yen", "dollar", "fed", "rates", "inflation", "oil", "china", "earnings",
+        "rally", "slump", "traders", "investors", "record", "outlook", "jobs", "tariffs", "banks", "ai",
+        "chipmakers", "treasury", "yields", "gold", "bitcoin", "europe", "japan", "boj", "ecb", "growth"
+    );
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final Random random;
+    private final int linksPerPage;
+    private final int newLinksPerRequest;
+    private final long intervalMillis;
+
+    public SyntheticSessionGenerator(long seed, int linksPerPage, int newLinksPerRequest, long intervalMillis) {
+        this.random = new Random(seed);
+        this.linksPerPage = linksPerPage;
+        this.newLinksPerRequest = newLinksPerRequest;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public long generate(Path output, String site, int requests) throws IOException {
+        boolean marketWatch = "marketwatch".equals(site);
+        List<String> feeds = marketWatch ? MARKETWATCH_FEEDS : BLOOMBERG_FEEDS;
+        String host = marketWatch ? "https://www.marketwatch.com" : "https://www.bloomberg.com";
+        int requestsPerFeed = Math.max(1, requests / feeds.size());
+
+        long elapsed = 0;
+        long links = 0;
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+            new GZIPOutputStream(Files.newOutputStream(output), 64 * 1024), StandardCharsets.UTF_8), 64 * 1024)) {
+            Deque<LinkSnapshot> page = new ArrayDeque<>(linksPerPage);
+            Instant publishedAt = Instant.parse("2026-10-16T12:00:00Z");
+            String pageUrl = null;
+            for (int i = 0; i < requests; i++) {
+                if (i % requestsPerFeed == 0) {
+                    String feed = feeds.get((i / requestsPerFeed) % feeds.size());
+                    pageUrl = host + "/" + feed;
+                    page.clear();
+                    publishedAt = Instant.parse("2026-10-16T12:00:00Z");
+                }
+                // 新しいリンクが下に追加され、古いものは画面外へ流れていく
+                for (int n = 0; n < newLinksPerRequest; n++) {
+                    publishedAt = publishedAt.minus(1 + random.nextInt(15), ChronoUnit.MINUTES);
+                    page.addLast(nextLink(marketWatch, host, publishedAt));
+                    if (page.size() > linksPerPage) {
+                        page.removeFirst();
+                    }
+                }
+                writeLine(writer, elapsed, SessionRecorder.INBOUND, encodeRequest(site, pageUrl, page, i));
+                links += page.size();
+                elapsed += intervalMillis + random.nextInt((int) Math.max(1, intervalMillis));
+            }
+            writeLine(writer, elapsed, SessionRecorder.INBOUND, "quit");
+        }
+        return links;
+    }
+
+    private LinkSnapshot nextLink(boolean marketWatch, String host, Instant publishedAt) {
+        StringBuilder headline = new StringBuilder();
+        StringBuilder slug = new StringBuilder();
+        int words = 5 + random.nextInt(8);
+        for (int w = 0; w < words; w++) {
+            String word = WORDS.get(random.nextInt(WORDS.size()));
+            if (w > 0) {
+                headline.append(' ');
+                slug.append('-');
+            }
+            headline.append(w == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : word);
+            slug.append(word);
+        }
+        String suffix = Long.toHexString(random.nextLong() & 0xFFFFFFFFFFFFL);
+        String href = marketWatch
+            ? host + "/story/" + slug + "-" + suffix
+            : host + "/news/articles/" + publishedAt.toString().substring(0, 10) + "/" + slug + "-" + suffix;
+        return new LinkSnapshot(href, headline.toString(), publishedAt.toString());
+    }
+
+    private String encodeRequest(String site, String pageUrl, Deque<LinkSnapshot> page, int index) throws IOException {
+        StringWriter buffer = new StringWriter(page.size() * 192);
+        try (JsonGenerator generator = jsonFactory.createGenerator(buffer)) {
+            generator.writeStartObject();
+            generator.writeStringField("siteId", site);
+            generator.writeStringField("url", pageUrl);
+            generator.writeArrayFieldStart("visibleButtons");
+            if (index % 4 == 0) {
+                generator.writeStartObject();
+                generator.writeStringField("title", "marketwatch".equals(site) ? "See More" : "Load more stories");
+                generator.writeStringField("role", "AXButton");
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeArrayFieldStart("links");
+            for (LinkSnapshot link : page) {
+                generator.writeStartObject();
+                generator.writeStringField("href", link.getHref());
+                generator.writeStringField("text", link.getText());
+                generator.writeStringField("publishedAt", link.getPublishedAt());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+        return buffer.toString();
+    }
+
+    private void writeLine(Writer writer, long elapsed, char direction, String payload) throws IOException {
+        writer.write(Long.toString(elapsed));
+        writer.write('\t');
+        writer.write(direction);
+        writer.write('\t');
+        writer.write(payload);
+        writer.write('\n');
+    }
+}
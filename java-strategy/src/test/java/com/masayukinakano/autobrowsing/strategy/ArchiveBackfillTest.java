@@ -0,0 +1,82 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ArchiveBackfillTest {
+
+    private static final String LIVE_HREF = "https://www.bloomberg.com/news/articles/2024-05-01/oil-jumps";
+    private static final String ARCHIVED_HREF = "https://www.bloomberg.com/news/articles/2024-04-30/yen-slides";
+
+    @Test
+    void linksCapturedLiveUnderAnotherFeedAreNotImportedAgain(@TempDir Path dir) throws IOException {
+        Path output = dir.resolve("links");
+        Path archive = Files.createDirectories(dir.resolve("raw").resolve("html"));
+        Files.writeString(archive.resolve("oil.html"), "<html><body>"
+            + "<a href=\"/news/articles/2024-05-01/oil-jumps\">Oil Jumps</a>"
+            + "<a href=\"/news/articles/2024-04-30/yen-slides\">Yen Slides</a>"
+            + "</body></html>");
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try (LinkParquetWriter writer = LinkParquetWriter.open(output)) {
+            writer.writeLinks("bloomberg", "https://www.bloomberg.com/markets",
+                List.of(new LinkSnapshot(LIVE_HREF, "Oil Jumps", "2024-05-01T03:00:00Z")));
+            Path checkpoint = output.resolve("_backfill").resolve("bloomberg.checkpoint");
+            new ArchiveBackfill(writer, "bloomberg", dir.resolve("raw"), checkpoint, 10, 100).run(pool);
+        } finally {
+            pool.shutdown();
+        }
+
+        LinkManifest manifest = LinkManifest.load(output.resolve("siteId=bloomberg"), "bloomberg");
+        assertEquals(2, manifest.getFiles().stream().mapToLong(LinkManifest.Entry::getRowCount).sum());
+        assertFalse(manifest.getFiles().stream()
+            .anyMatch(entry -> !entry.getFeed().equals("bloomberg_markets") && entry.mayContainHref(LIVE_HREF)));
+        assertEquals(1, manifest.getFiles().stream().filter(entry -> entry.mayContainHref(ARCHIVED_HREF)).count());
+    }
+
+    @Test
+    void liveCrawlAfterBackfillDoesNotAddArchivedLinksAgain(@TempDir Path dir) throws IOException {
+        Path output = dir.resolve("links");
+        Path archive = Files.createDirectories(dir.resolve("raw").resolve("json"));
+        Files.writeString(archive.resolve("yen.json"), "{\"items\":[{\"url\":\"" + ARCHIVED_HREF
+            + "\",\"headline\":\"Yen Slides\",\"publishedAt\":\"2024-04-30T01:00:00Z\"}]}");
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try (LinkParquetWriter writer = LinkParquetWriter.open(output)) {
+            Path checkpoint = output.resolve("_backfill").resolve("bloomberg.checkpoint");
+            new ArchiveBackfill(writer, "bloomberg", dir.resolve("raw"), checkpoint, 10, 100).run(pool);
+        } finally {
+            pool.shutdown();
+        }
+        try (LinkParquetWriter writer = LinkParquetWriter.open(output)) {
+            writer.writeLinks("bloomberg", "https://www.bloomberg.com/markets", List.of(
+                new LinkSnapshot(ARCHIVED_HREF, "Yen Slides", "2024-04-30T01:00:00Z"),
+                new LinkSnapshot(LIVE_HREF, "Oil Jumps", "2024-05-01T03:00:00Z")));
+        }
+
+        LinkManifest manifest = LinkManifest.load(output.resolve("siteId=bloomberg"), "bloomberg");
+        assertEquals(2, manifest.getFiles().stream().mapToLong(LinkManifest.Entry::getRowCount).sum());
+        assertFalse(manifest.getFiles().stream()
+            .anyMatch(entry -> entry.getFeed().equals("bloomberg_markets") && entry.mayContainHref(ARCHIVED_HREF)));
+        assertTrue(manifest.getFiles().stream()
+            .allMatch(entry -> entry.isArchive() == !entry.getFeed().equals("bloomberg_markets")));
+    }
+
+    @Test
+    void unsupportedSiteIsRejected(@TempDir Path dir) throws IOException {
+        try (LinkParquetWriter writer = LinkParquetWriter.open(dir)) {
+            assertThrows(IllegalArgumentException.class,
+                () -> new ArchiveBackfill(writer, "nikkei", dir, dir.resolve("nikkei.checkpoint"), 10, 100));
+        }
+    }
+}
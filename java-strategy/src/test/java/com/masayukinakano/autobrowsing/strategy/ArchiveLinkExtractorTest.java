@@ -0,0 +1,74 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class ArchiveLinkExtractorTest {
+
+    private final ArchiveLinkExtractor extractor = ArchiveLinkExtractor.bloomberg(new JsonFactory());
+
+    @Test
+    void nextDataStoriesTakePrecedenceOverAnchors() {
+        String html = "<html><head><script id=\"__NEXT_DATA__\" type=\"application/json\">"
+            + "{\"props\":{\"pageProps\":{\"story\":{\"url\":\"/news/articles/2024-05-01/oil-jumps?srnd=markets\","
+            + "\"headline\":\"Oil Jumps\",\"publishedAt\":\"2024-05-01T03:00:00.000Z\","
+            + "\"related\":[{\"url\":\"https://www.bloomberg.com/opinion/articles/2024-04-30/fed-view\",\"title\":\"Fed View\"},"
+            + "{\"url\":\"https://www.bloomberg.com/markets\",\"title\":\"Markets\"}]}}}}"
+            + "</script></head><body>"
+            + "<a class=\"story\" href=\"/news/articles/2024-05-01/oil-jumps\"><span>Oil</span>\n  Jumps</a>"
+            + "<a href=\"https://www.bloomberg.com/news/features/2024-04-29/deep-dive\"><h3>Deep &amp; Dive</h3></a>"
+            + "<a href=\"https://example.com/news/articles/other\">Elsewhere</a>"
+            + "<abbr>not a link</abbr>"
+            + "</body></html>";
+
+        Map<String, LinkSnapshot> links = extractor.extractHtml(html);
+
+        assertEquals(3, links.size());
+        LinkSnapshot story = links.get("https://www.bloomberg.com/news/articles/2024-05-01/oil-jumps");
+        assertEquals("Oil Jumps", story.getText());
+        assertEquals("2024-05-01T03:00:00.000Z", story.getPublishedAt());
+        assertNull(links.get("https://www.bloomberg.com/opinion/articles/2024-04-30/fed-view").getPublishedAt());
+        assertEquals("Deep & Dive", links.get("https://www.bloomberg.com/news/features/2024-04-29/deep-dive").getText());
+        assertFalse(links.containsKey("https://www.bloomberg.com/markets"));
+    }
+
+    @Test
+    void parsedJsonDocumentYieldsArticles() {
+        String json = "{\"source\":\"bloomberg\",\"items\":[{\"url\":\"https://www.bloomberg.com/news/articles/2024-05-02/yen\","
+            + "\"headline\":\"Yen Slides\",\"publishedAt\":\"2024-05-02T00:00:00Z\"},{\"url\":\"\",\"headline\":\"Empty\"}]}";
+
+        Map<String, LinkSnapshot> links = extractor.extractJsonDocument(json);
+
+        assertEquals(1, links.size());
+        assertEquals("Yen Slides", links.get("https://www.bloomberg.com/news/articles/2024-05-02/yen").getText());
+        assertEquals(0, extractor.extractJsonDocument("{\"broken\":").size());
+    }
+
+    @Test
+    void escapedNextDataIsDecodedWhileStreaming() throws IOException {
+        String padding = "<p>" + "x".repeat(8180) + "</p>";
+        String html = "<html><body>" + padding
+            + "<a href=\"/news/articles/2024-05-03/gold\">Gold <b>Climbs</b></a>"
+            + "<script id=\"__NEXT_DATA__\" type=\"application/json\">"
+            + "{&quot;story&quot;:{&quot;url&quot;:&quot;/news/articles/2024-05-03/gold&quot;,"
+            + "&quot;headline&quot;:&quot;Gold &amp; Silver Climb&quot;,&quot;publishedAt&quot;:&quot;2024-05-03T00:00:00Z&quot;}}"
+            + "</script><script>if (a < b && b > c) { x = 1; }</script>"
+            + "<a\nhref='/news/articles/2024-05-04/copper'>Copper</a></body></html>";
+
+        Map<String, LinkSnapshot> links = extractor.extractHtml(new StringReader(html));
+
+        assertEquals(2, links.size());
+        LinkSnapshot gold = links.get("https://www.bloomberg.com/news/articles/2024-05-03/gold");
+        assertEquals("Gold & Silver Climb", gold.getText());
+        assertEquals("2024-05-03T00:00:00Z", gold.getPublishedAt());
+        assertEquals("Copper", links.get("https://www.bloomberg.com/news/articles/2024-05-04/copper").getText());
+        assertNull(ArchiveLinkExtractor.forSite("nikkei", new JsonFactory()));
+    }
+}
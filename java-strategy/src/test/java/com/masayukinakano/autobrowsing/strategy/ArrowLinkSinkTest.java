@@ -0,0 +1,89 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ArrowLinkSinkTest {
+
+    @Test
+    void idleFileIsFinishedAndReadable(@TempDir Path dir) throws Exception {
+        try (ArrowLinkSink sink = new ArrowLinkSink(dir, 200)) {
+            sink.write("bloomberg", "bloomberg_news", List.of(record("a"), record("b")));
+            sink.write("bloomberg", "bloomberg_news", List.of(record("c")));
+
+            // 閉じる前でもアイドル時間が過ぎれば .arrow として読める
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (files(dir, ".arrow").isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            List<Path> finished = files(dir, ".arrow");
+            assertEquals(1, finished.size());
+            assertEquals(List.of("a", "b", "c"), readHrefs(finished.get(0)));
+            assertTrue(files(dir, ".inprogress").isEmpty());
+        }
+    }
+
+    @Test
+    void leftoverInProgressFileIsRecoveredOnOpen(@TempDir Path dir) throws Exception {
+        Path crashed = Files.createDirectories(dir.resolve("crashed"));
+        try (ArrowLinkSink sink = new ArrowLinkSink(dir.resolve("live"), 60_000)) {
+            sink.write("bloomberg", "bloomberg_news", List.of(record("a"), record("b")));
+            sink.write("bloomberg", "bloomberg_news", List.of(record("c")));
+            // フッターを書く前の状態を、強制終了したプロセスの残骸として写し取る
+            Path inProgress = files(dir.resolve("live"), ".inprogress").get(0);
+            Files.copy(inProgress, crashed.resolve(inProgress.getFileName()));
+        }
+        Path leftover = files(crashed, ".inprogress").get(0);
+        Files.write(leftover, new byte[] {(byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x10}, StandardOpenOption.APPEND);
+
+        new ArrowLinkSink(crashed, 60_000).close();
+
+        assertTrue(files(crashed, ".inprogress").isEmpty());
+        List<Path> recovered = files(crashed, ".arrow");
+        assertEquals(1, recovered.size());
+        assertEquals(List.of("a", "b", "c"), readHrefs(recovered.get(0)));
+    }
+
+    private static LinkRecord record(String id) {
+        return new LinkRecord("bloomberg", "https://www.bloomberg.com/news", id, "Headline " + id, null, null, 1L, null);
+    }
+
+    private static List<Path> files(Path dir, String suffix) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(suffix)).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static List<String> readHrefs(Path file) throws IOException {
+        List<String> hrefs = new ArrayList<>();
+        try (BufferAllocator allocator = new RootAllocator();
+             FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             ArrowFileReader reader = new ArrowFileReader(channel, allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            while (reader.loadNextBatch()) {
+                VarCharVector vector = (VarCharVector) root.getVector("href");
+                for (int i = 0; i < root.getRowCount(); i++) {
+                    hrefs.add(vector.getObject(i).toString());
+                }
+            }
+        }
+        return hrefs;
+    }
+}
@@ -0,0 +1,88 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ArticleBlobStoreTest {
+
+    @Test
+    void deduplicatesAndReadsBackAfterReopen(@TempDir Path dir) throws IOException {
+        List<byte[]> pages = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            pages.add(samplePage(i));
+        }
+
+        List<String> hashes = new ArrayList<>();
+        try (ArticleBlobStore store = ArticleBlobStore.open(dir)) {
+            for (int i = 0; i < pages.size(); i++) {
+                hashes.add(store.store("bloomberg", "article-" + i, "html", pages.get(i)));
+            }
+            assertEquals(hashes.get(3), store.store("bloomberg", "duplicate", "html", pages.get(3)));
+            assertNotEquals(hashes.get(3), hashes.get(4));
+        }
+
+        Path siteDir = dir.resolve("bloomberg");
+        assertEquals(1L, Files.list(siteDir).filter(p -> p.getFileName().toString().endsWith(".pack")).count());
+        assertTrue(Files.exists(siteDir.resolve("dict-0001.bin")));
+
+        try (ArticleBlobStore store = ArticleBlobStore.open(dir)) {
+            assertArrayEquals(pages.get(0), store.read("bloomberg", hashes.get(0)));
+            assertArrayEquals(pages.get(39), store.readArticle("bloomberg", "article-39", "html"));
+            assertArrayEquals(pages.get(3), store.readArticle("bloomberg", "duplicate", "html"));
+            List<String> scanned = new ArrayList<>();
+            store.forEach("bloomberg", (hash, content) -> scanned.add(hash));
+            assertEquals(hashes, scanned);
+        }
+    }
+
+    @Test
+    void tornPackTailIsDroppedOnReopen(@TempDir Path dir) throws IOException {
+        List<String> hashes = new ArrayList<>();
+        try (ArticleBlobStore store = ArticleBlobStore.open(dir)) {
+            for (int i = 0; i < 3; i++) {
+                hashes.add(store.store("bloomberg", "article-" + i, "html", samplePage(i)));
+            }
+        }
+        // ヘッダの途中で終了したパック
+        Path pack = dir.resolve("bloomberg").resolve("pack-000001.pack");
+        long intact = Files.size(pack);
+        byte[] torn = new byte[20];
+        Arrays.fill(torn, (byte) 0x7f);
+        Files.write(pack, torn, StandardOpenOption.APPEND);
+
+        try (ArticleBlobStore store = ArticleBlobStore.open(dir)) {
+            assertArrayEquals(samplePage(2), store.readArticle("bloomberg", "article-2", "html"));
+            assertEquals(intact, Files.size(pack));
+            hashes.add(store.store("bloomberg", "article-3", "html", samplePage(3)));
+            List<String> scanned = new ArrayList<>();
+            store.forEach("bloomberg", (hash, content) -> scanned.add(hash));
+            assertEquals(hashes, scanned);
+            assertArrayEquals(samplePage(3), store.readArticle("bloomberg", "article-3", "html"));
+        }
+    }
+
+    private static byte[] samplePage(int index) {
+        StringBuilder html = new StringBuilder();
+        html.append("<html>\n<head><meta charset=\"utf-8\"><link rel=\"stylesheet\" href=\"/assets/main.css\">\n");
+        html.append("<script src=\"/assets/vendor.js\"></script></head>\n<body><nav class=\"site-nav\">Markets Economics Technology</nav>\n");
+        html.append("<article><h1>Headline number ").append(index).append("</h1>\n");
+        for (int p = 0; p < 5; p++) {
+            html.append("<p>Paragraph ").append(p).append(" of story ").append(index * 31 + p).append("</p>\n");
+        }
+        html.append("</article>\n<footer class=\"site-footer\">Terms of Service Privacy Policy</footer>\n</body>\n</html>\n");
+        return html.toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
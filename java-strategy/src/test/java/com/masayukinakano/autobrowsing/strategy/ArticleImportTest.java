@@ -0,0 +1,55 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ArticleImportTest {
+
+    @Test
+    void importsSavedArticlesOnceAndReadsThemBack(@TempDir Path dir) throws IOException {
+        Path raw = dir.resolve("raw");
+        byte[] html = "<html><body>Stocks rally</body></html>".getBytes(StandardCharsets.UTF_8);
+        byte[] json = "{\"headline\":\"Stocks rally\"}".getBytes(StandardCharsets.UTF_8);
+        Files.createDirectories(raw.resolve("html"));
+        Files.createDirectories(raw.resolve("json"));
+        Files.write(raw.resolve("html").resolve("abc123.html"), html);
+        Files.write(raw.resolve("json").resolve("abc123.json"), json);
+        Files.writeString(raw.resolve("notes.txt"), "ignored");
+
+        Path storeDir = dir.resolve("store");
+        try (ArticleBlobStore store = ArticleBlobStore.open(storeDir)) {
+            assertFalse(Files.exists(storeDir));
+            new ArticleImport(store, "bloomberg", raw).run();
+            new ArticleImport(store, "bloomberg", raw).run();
+        }
+
+        try (ArticleBlobStore store = ArticleBlobStore.open(storeDir)) {
+            assertArrayEquals(html, store.readArticle("bloomberg", "abc123", "html"));
+            assertArrayEquals(json, store.readArticle("bloomberg", "abc123", "json"));
+            List<String> blobs = new ArrayList<>();
+            store.forEach("bloomberg", (hash, content) -> blobs.add(hash));
+            assertEquals(2, blobs.size());
+        }
+    }
+
+    @Test
+    void storeDirectoryIsCreatedOnFirstWrite(@TempDir Path dir) throws IOException {
+        Path storeDir = dir.resolve("article-store");
+        try (ArticleBlobStore store = ArticleBlobStore.open(storeDir)) {
+            assertFalse(Files.exists(storeDir));
+            store.store("bloomberg", "abc123", "html", "<html></html>".getBytes(StandardCharsets.UTF_8));
+            assertTrue(Files.isDirectory(storeDir.resolve("bloomberg")));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FlightRecordingTest {
+
+    private static final String HREF = "https://www.bloomberg.com/news/articles/2026-10-18/oil-jumps";
+
+    @Test
+    void customEventsAreRecordedWithTheirFields(@TempDir Path dir) throws IOException, ParseException {
+        String input = "{\"siteId\":\"bloomberg\",\"url\":\"https://www.bloomberg.com/news\","
+            + "\"links\":[{\"href\":\"" + HREF + "\",\"text\":\"Oil Jumps\"}]}\n"
+            + "{\"command\":\"storeArticle\",\"siteId\":\"bloomberg\","
+            + "\"article\":{\"articleId\":\"a1\",\"contentType\":\"html\",\"content\":\"<html>article</html>\"}}\n"
+            + "QUIT\n";
+        Path file = dir.resolve("strategy.jfr");
+
+        Recording recording = FlightRecording.start(file);
+        try (LinkParquetWriter writer = LinkParquetWriter.open(dir.resolve("links"));
+             ArticleBlobStore store = ArticleBlobStore.open(dir.resolve("article-store"))) {
+            StrategyServer server = new StrategyServer(StrategyServer.createObjectMapper(),
+                StrategyRegistry.defaultRegistry(), writer, store, null);
+            server.run(Channels.newChannel(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))),
+                Channels.newChannel(new ByteArrayOutputStream()));
+        } finally {
+            recording.stop();
+            recording.close();
+        }
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+
+        List<RecordedEvent> decodes = named(events, "com.masayukinakano.autobrowsing.RequestDecode");
+        assertEquals(2, decodes.size());
+        assertEquals("bloomberg", decodes.get(0).getString("siteId"));
+        assertNull(decodes.get(0).getString("command"));
+        assertTrue(decodes.get(0).getLong("payloadBytes") > 0);
+        assertEquals(1, decodes.get(0).getInt("linkCount"));
+        assertEquals(LoadMoreRequest.STORE_ARTICLE, decodes.get(1).getString("command"));
+
+        RecordedEvent evaluation = single(events, "com.masayukinakano.autobrowsing.StrategyEvaluation");
+        assertEquals("bloomberg", evaluation.getString("siteId"));
+        assertFalse(evaluation.getString("strategy").isEmpty());
+        assertNotNull(evaluation.getString("action"));
+
+        RecordedEvent dedup = single(events, "com.masayukinakano.autobrowsing.LinkDedup");
+        assertEquals("bloomberg_news", dedup.getString("feed"));
+        assertEquals(1, dedup.getInt("batchSize"));
+        assertEquals(0, dedup.getInt("knownLinks"));
+        assertEquals(1, dedup.getInt("newLinks"));
+        assertEquals(0, dedup.getInt("nearDuplicates"));
+
+        RecordedEvent write = named(events, "com.masayukinakano.autobrowsing.ParquetIo").stream()
+            .filter(event -> ParquetIoEvent.WRITE.equals(event.getString("operation")))
+            .findFirst()
+            .orElseThrow();
+        assertTrue(write.getString("file").endsWith("bloomberg_news.parquet.tmp"));
+        assertEquals(1, write.getLong("rows"));
+        assertTrue(write.getLong("bytes") > 0);
+    }
+
+    @Test
+    void jfrOptionOrEnvironmentStartsTheRecording(@TempDir Path dir) throws IOException {
+        assertNull(FlightRecording.startFromArguments(new String[] {"--site", "bloomberg"}, null));
+
+        Recording fromOption = FlightRecording.startFromArguments(new String[] {"--jfr=" + dir.resolve("option")}, null);
+        assertRunningAndDumps(fromOption, dir.resolve("option"));
+
+        Recording fromEnvironment = FlightRecording.startFromArguments(new String[0], dir.resolve("env.jfr").toString());
+        assertRunningAndDumps(fromEnvironment, dir);
+        assertTrue(Files.exists(dir.resolve("env.jfr")));
+    }
+
+    private static void assertRunningAndDumps(Recording recording, Path directory) throws IOException {
+        assertNotNull(recording);
+        try {
+            assertEquals(RecordingState.RUNNING, recording.getState());
+            assertEquals(directory, recording.getDestination().getParent());
+            recording.stop();
+            assertTrue(Files.size(recording.getDestination()) > 0);
+        } finally {
+            recording.close();
+        }
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        return events.stream()
+            .filter(event -> event.getEventType().getName().equals(name))
+            .collect(Collectors.toList());
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> matching = named(events, name);
+        assertEquals(1, matching.size(), name);
+        return matching.get(0);
+    }
+}
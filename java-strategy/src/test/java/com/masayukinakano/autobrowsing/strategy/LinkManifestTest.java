@@ -0,0 +1,42 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LinkManifestTest {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    @Test
+    void selectsFilesByFeedAndTimeRangeAfterReload(@TempDir Path dir) throws IOException {
+        Path siteDir = dir.resolve("siteId=bloomberg");
+        LinkManifest manifest = LinkManifest.load(siteDir, "bloomberg");
+        manifest.put(new LinkManifest.Entry("date=2026-10-15/bloomberg_markets.parquet", "bloomberg_markets", "2026-10-15",
+            10, 1000, 15 * DAY, 15 * DAY + 100, 0, 20 * DAY, 20 * DAY, "https://b.example/a", "https://b.example/m"));
+        manifest.put(new LinkManifest.Entry("date=2026-10-16/bloomberg_markets.parquet", "bloomberg_markets", "2026-10-16",
+            5, 500, 16 * DAY, 16 * DAY + 100, 2, 16 * DAY, 17 * DAY, "https://b.example/n", "https://b.example/z"));
+        manifest.put(new LinkManifest.Entry("date=2026-10-16/bloomberg_technology.parquet", "bloomberg_technology",
+            "2026-10-16", 3, 300, 16 * DAY, 16 * DAY, 0, 16 * DAY, 16 * DAY, "https://b.example/t", "https://b.example/t"));
+        manifest.save();
+
+        LinkManifest reloaded = LinkManifest.load(siteDir, "bloomberg");
+        assertEquals(3, reloaded.getFiles().size());
+
+        List<LinkManifest.Entry> markets = reloaded.select("bloomberg_markets", 16 * DAY, null);
+        assertEquals(1, markets.size());
+        assertEquals("2026-10-16", markets.get(0).getDate());
+        assertTrue(markets.get(0).mayContainHref("https://b.example/p"));
+        assertFalse(markets.get(0).mayContainHref("https://b.example/b"));
+
+        // publishedAt のない行は取得時刻の範囲で拾う
+        assertEquals(1, reloaded.select("bloomberg_markets", 17 * DAY, null).size());
+        assertEquals(2, reloaded.select(null, 16 * DAY, 16 * DAY).size());
+    }
+}
@@ -0,0 +1,197 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LinkParquetWriterTest {
+
+    private static final String FEED_URL = "https://www.bloomberg.com/news";
+
+    @Test
+    void watermarkAdvancesOnlyAfterPartitionsAreWritten(@TempDir Path dir) throws IOException {
+        // 日付パーティションのディレクトリを作れないようにして書き込みを失敗させる
+        Path siteDir = Files.createDirectories(dir.resolve("siteId=bloomberg"));
+        Files.writeString(siteDir.resolve("date=2026-10-16"), "");
+        List<LinkSnapshot> links = List.of(
+            new LinkSnapshot("https://www.bloomberg.com/news/articles/2026-10-16/a", "A", "2026-10-16T09:00:00Z"));
+
+        try (LinkParquetWriter writer = LinkParquetWriter.open(dir)) {
+            writer.writeLinks("bloomberg", FEED_URL, links);
+        }
+        assertFalse(Files.exists(dir.resolve("bloomberg_news.watermark")));
+
+        Files.delete(siteDir.resolve("date=2026-10-16"));
+        try (LinkParquetWriter writer = LinkParquetWriter.open(dir)) {
+            writer.writeLinks("bloomberg", FEED_URL, links);
+        }
+        assertTrue(Files.exists(dir.resolve("bloomberg_news.watermark")));
+        assertEquals(1, totalRows(siteDir));
+    }
+
+    @Test
+    void legacyMigrationIsIdempotentAfterInterruptedRename(@TempDir Path dir, @TempDir Path source) throws IOException {
+        // 旧形式（サイト直下の単一ファイル）の中身を別ディレクトリで作る
+        try (LinkParquetWriter writer = LinkParquetWriter.open(source)) {
+            writer.writeLinks("bloomberg", FEED_URL, List.of(
+                new LinkSnapshot("https://www.bloomberg.com/news/articles/2026-10-15/a", "A", "2026-10-15T09:00:00Z"),
+                new LinkSnapshot("https://www.bloomberg.com/news/articles/2026-10-15/b", "B", "2026-10-15T10:00:00Z")));
+        }
+        Path legacy = dir.resolve("bloomberg_news.parquet");
+        Files.copy(source.resolve("siteId=bloomberg/date=2026-10-15/bloomberg_news.parquet"), legacy);
+
+        List<LinkSnapshot> fresh = List.of(
+            new LinkSnapshot("https://www.bloomberg.com/news/articles/2026-10-16/c", "C", "2026-10-16T09:00:00Z"));
+        try (LinkParquetWriter writer = LinkParquetWriter.open(dir)) {
+            writer.writeLinks("bloomberg", FEED_URL, fresh);
+        }
+        Path siteDir = dir.resolve("siteId=bloomberg");
+        assertEquals(3, totalRows(siteDir));
+        assertTrue(Files.exists(dir.resolve("bloomberg_news.parquet.legacy")));
+
+        // リネーム前に落ちた場合と、マニフェスト保存前に落ちた場合をまとめて再現する
+        Files.copy(dir.resolve("bloomberg_news.parquet.legacy"), legacy, StandardCopyOption.REPLACE_EXISTING);
+        Files.delete(siteDir.resolve("_manifest.json"));
+        try (LinkParquetWriter writer = LinkParquetWriter.open(dir)) {
+            writer.writeLinks("bloomberg", FEED_URL, fresh);
+        }
+        assertEquals(2, rowsIn(siteDir, "date=2026-10-15/bloomberg_news.parquet"));
+        assertFalse(Files.exists(legacy));
+
+        try (LinkParquetWriter writer = LinkParquetWriter.open(dir)) {
+            writer.writeLinks("bloomberg", FEED_URL, fresh);
+        }
+        assertEquals(3, totalRows(siteDir));
+    }
+
+    @Test
+    void knownLinksAreSkippedAcrossDatePartitions(@TempDir Path dir) throws IOException {
+        LinkSnapshot older = new LinkSnapshot("https://www.bloomberg.com/news/articles/2026-10-15/a", "A", "2026-10-15T09:00:00Z");
+        LinkSnapshot newer = new LinkSnapshot("https://www.bloomberg.com/news/articles/2026-10-16/b", "B", "2026-10-16T09:00:00Z");
+        try (LinkParquetWriter writer = LinkParquetWriter.open(dir)) {
+            writer.writeLinks("bloomberg", FEED_URL, List.of(older));
+            writer.writeLinks("bloomberg", FEED_URL, List.of(newer, older));
+        }
+        try (LinkParquetWriter writer = LinkParquetWriter.open(dir)) {
+            writer.writeLinks("bloomberg", FEED_URL, List.of(newer, older));
+        }
+        Path siteDir = dir.resolve("siteId=bloomberg");
+        assertEquals(2, totalRows(siteDir));
+        assertEquals(1, rowsIn(siteDir, "date=2026-10-15/bloomberg_news.parquet"));
+        assertEquals(1, rowsIn(siteDir, "date=2026-10-16/bloomberg_news.parquet"));
+    }
+
+    @Test
+    void fencedOutNodeDoesNotReplacePartitionFiles(@TempDir Path dir) throws IOException {
+        SiteLeaseManager leases = new SiteLeaseManager(dir, "node-a", 60_000L);
+        Path siteDir = dir.resolve("siteId=bloomberg");
+        Path partition = siteDir.resolve("date=2026-10-16/bloomberg_news.parquet");
+        try (LinkParquetWriter writer = LinkParquetWriter.openShared(dir, leases)) {
+            writer.writeLinks("bloomberg", FEED_URL, List.of(
+                new LinkSnapshot("https://www.bloomberg.com/news/articles/2026-10-16/a", "A", "2026-10-16T09:00:00Z")));
+            byte[] before = Files.readAllBytes(partition);
+
+            // リースを引き継いだ別ノードがマニフェストのトークンを進めた状態
+            LinkManifest newer = LinkManifest.load(siteDir, "bloomberg");
+            newer.fence("node-b", 2);
+            newer.save();
+
+            writer.writeLinks("bloomberg", FEED_URL, List.of(
+                new LinkSnapshot("https://www.bloomberg.com/news/articles/2026-10-16/b", "B", "2026-10-16T10:00:00Z")));
+            assertArrayEquals(before, Files.readAllBytes(partition));
+            assertFalse(Files.exists(partition.resolveSibling("bloomberg_news.parquet.tmp")));
+            assertEquals("node-b", LinkManifest.load(siteDir, "bloomberg").getOwner());
+        }
+    }
+
+    @Test
+    void nearDuplicateClustersSurviveRestart(@TempDir Path dir) throws Exception {
+        String first = "https://www.bloomberg.com/news/articles/2026-10-16/fed-raises";
+        try (LinkParquetWriter writer = LinkParquetWriter.open(dir)) {
+            writer.writeLinks("bloomberg", FEED_URL, List.of(new LinkSnapshot(first,
+                "Fed raises interest rates by half a point as inflation persists", "2026-10-16T09:00:00Z")));
+        }
+        try (LinkParquetWriter writer = LinkParquetWriter.open(dir)) {
+            writer.awaitNearDuplicateWarmup();
+            writer.writeLinks("bloomberg", "https://www.bloomberg.com/markets", List.of(new LinkSnapshot(
+                "https://www.bloomberg.com/news/articles/2026-10-16/fed-hikes",
+                "Fed raises interest rate by half a point as inflation persists", "2026-10-16T10:00:00Z")));
+        }
+        Path partition = dir.resolve("siteId=bloomberg/date=2026-10-16");
+        assertEquals(List.of(NearDuplicateIndex.newClusterId(first)), clusterIds(partition.resolve("bloomberg_markets.parquet")));
+    }
+
+    @Test
+    void failedWriteLeavesNoPhantomClusterMember(@TempDir Path dir) throws Exception {
+        Path siteDir = Files.createDirectories(dir.resolve("siteId=bloomberg"));
+        Files.writeString(siteDir.resolve("date=2026-10-16"), "");
+        String retry = "https://www.bloomberg.com/news/articles/2026-10-16/fed-hikes";
+        try (LinkParquetWriter writer = LinkParquetWriter.open(dir)) {
+            writer.awaitNearDuplicateWarmup();
+            writer.writeLinks("bloomberg", FEED_URL, List.of(new LinkSnapshot(
+                "https://www.bloomberg.com/news/articles/2026-10-16/fed-raises",
+                "Fed raises interest rates by half a point as inflation persists", "2026-10-16T09:00:00Z")));
+            Files.delete(siteDir.resolve("date=2026-10-16"));
+            writer.writeLinks("bloomberg", FEED_URL, List.of(new LinkSnapshot(retry,
+                "Fed raises interest rate by half a point as inflation persists", "2026-10-16T10:00:00Z")));
+        }
+        assertEquals(List.of(NearDuplicateIndex.newClusterId(retry)),
+            clusterIds(siteDir.resolve("date=2026-10-16/bloomberg_news.parquet")));
+    }
+
+    @Test
+    void watermarkIgnoresKnownLinksAndFeedsKeepTheirOwnSession(@TempDir Path dir) throws IOException {
+        String markets = "https://www.bloomberg.com/markets";
+        try (LinkParquetWriter writer = LinkParquetWriter.open(dir)) {
+            writer.writeLinks("bloomberg", FEED_URL, List.of(
+                new LinkSnapshot("https://www.bloomberg.com/news/articles/2026-10-16/a", "A", "2026-10-16T09:00:00Z")));
+            FeedWatermark started = writer.getWatermark("bloomberg", FEED_URL);
+            assertEquals("https://www.bloomberg.com/news/articles/2026-10-16/a", started.getHref());
+
+            // 既知の「よく読まれている記事」が新しい日付で表示されても watermark は動かない
+            writer.writeLinks("bloomberg", FEED_URL, List.of(
+                new LinkSnapshot("https://www.bloomberg.com/news/articles/2026-10-16/a", "A", "2026-10-18T09:00:00Z"),
+                new LinkSnapshot("https://www.bloomberg.com/news/articles/2026-10-16/b", "B", "2026-10-16T10:00:00Z")));
+            assertTrue(Files.readString(dir.resolve("bloomberg_news.watermark")).endsWith("/b"));
+
+            // 別フィードを挟んでも、続きのリクエストはクロール開始時点の watermark のまま
+            writer.getWatermark("bloomberg", markets);
+            assertEquals(started.getHref(), writer.getWatermark("bloomberg", FEED_URL).getHref());
+        }
+    }
+
+    private static List<Long> clusterIds(Path parquetFile) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(),
+            new org.apache.hadoop.fs.Path(parquetFile.toUri())).build()) {
+            Group record;
+            while ((record = reader.read()) != null) {
+                ids.add(record.getLong("clusterId", 0));
+            }
+        }
+        return ids;
+    }
+
+    private static long rowsIn(Path siteDir, String path) throws IOException {
+        return LinkManifest.load(siteDir, "bloomberg").getFiles().stream()
+            .filter(entry -> entry.getPath().equals(path))
+            .mapToLong(LinkManifest.Entry::getRowCount).sum();
+    }
+
+    private static long totalRows(Path siteDir) throws IOException {
+        return LinkManifest.load(siteDir, "bloomberg").getFiles().stream().mapToLong(LinkManifest.Entry::getRowCount).sum();
+    }
+}
@@ -8,6 +8,7 @@ final class LoadMoreRequestBuilder {
     private String url;
     private String pageHtml;
     private List<ButtonSnapshot> visibleButtons = new ArrayList<>();
+    private List<LinkSnapshot> links = new ArrayList<>();
 
     LoadMoreRequestBuilder withSiteId(String siteId) {
         this.siteId = siteId;
@@ -29,12 +30,18 @@ final class LoadMoreRequestBuilder {
         return this;
     }
 
+    LoadMoreRequestBuilder withLinks(List<LinkSnapshot> links) {
+        this.links = new ArrayList<>(links);
+        return this;
+    }
+
     LoadMoreRequest build() {
         LoadMoreRequest request = new LoadMoreRequest();
         TestMutator.setField(request, "siteId", siteId);
         TestMutator.setField(request, "url", url);
         TestMutator.setField(request, "pageHtml", pageHtml);
         TestMutator.setField(request, "visibleButtons", visibleButtons);
+        TestMutator.setField(request, "links", links);
         return request;
     }
 }
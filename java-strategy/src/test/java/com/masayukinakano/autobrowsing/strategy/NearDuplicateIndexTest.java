@@ -0,0 +1,54 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class NearDuplicateIndexTest {
+
+    @Test
+    void retitledHeadlinesShareCluster() {
+        NearDuplicateIndex index = new NearDuplicateIndex();
+        long original = index.assign(HeadlineMinHash.signature("Oil prices jump after OPEC+ agrees to deeper output cuts"), "https://a/1");
+        long syndicated = index.assign(HeadlineMinHash.signature("Oil Jumps After OPEC+ Agrees to Deeper Output Cuts"), "https://b/1");
+        long unrelated = index.assign(HeadlineMinHash.signature("Apple shares fall on weak iPhone demand in China"), "https://a/2");
+
+        assertEquals(original, syndicated);
+        assertNotEquals(original, unrelated);
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void unrelatedHeadlinesGetDistinctClusters() {
+        Random random = new Random(42);
+        String[] vocabulary = new String[5000];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = "w" + Integer.toString(i, 36);
+        }
+        String[] stopwords = {"the", "of", "to", "in", "on", "for", "and", "after", "says"};
+        NearDuplicateIndex index = new NearDuplicateIndex();
+        Set<Long> clusters = new HashSet<>();
+        int headlines = 5000;
+        for (int i = 0; i < headlines; i++) {
+            StringBuilder headline = new StringBuilder();
+            for (int word = 0; word < 8; word++) {
+                headline.append(vocabulary[random.nextInt(vocabulary.length)]).append(' ');
+                headline.append(stopwords[random.nextInt(stopwords.length)]).append(' ');
+            }
+            clusters.add(index.assign(HeadlineMinHash.signature(headline.toString()), "https://example.com/" + i));
+        }
+        assertEquals(headlines, clusters.size());
+    }
+
+    @Test
+    void blankHeadlineHasNoSignature() {
+        assertNull(HeadlineMinHash.signature("  "));
+        assertNull(HeadlineMinHash.signature("---"));
+        assertNull(HeadlineMinHash.signature("The Of And"));
+    }
+}
@@ -0,0 +1,35 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+
+class PublishedAtParserTest {
+
+    @Test
+    void picksFormatByShape() {
+        long nineUtc = Instant.parse("2026-10-16T09:00:00Z").toEpochMilli();
+        assertEquals(nineUtc, PublishedAtParser.parseEpochMillis("2026-10-16T09:00:00Z"));
+        assertEquals(nineUtc, PublishedAtParser.parseEpochMillis("2026-10-16T18:00:00+09:00"));
+        assertEquals(nineUtc, PublishedAtParser.parseEpochMillis("2026-10-16T04:00:00-05:00"));
+        assertEquals(nineUtc, PublishedAtParser.parseEpochMillis("2026-10-16T09:00"));
+        assertEquals(nineUtc, PublishedAtParser.parseEpochMillis("2026-10-16 09:00"));
+        assertEquals(nineUtc, PublishedAtParser.parseEpochMillis("2026/10/16 09:00:00"));
+        assertEquals(nineUtc, PublishedAtParser.parseEpochMillis("Fri, 16 Oct 2026 09:00:00 GMT"));
+        assertEquals(nineUtc, PublishedAtParser.parseEpochMillis(" 16 Oct 2026 18:00:00 +0900 "));
+        assertEquals(nineUtc, PublishedAtParser.parseEpochMillis(String.valueOf(nineUtc / 1000)));
+
+        long midnight = Instant.parse("2026-10-16T00:00:00Z").toEpochMilli();
+        assertEquals(midnight, PublishedAtParser.parseEpochMillis("2026-10-16"));
+        assertEquals(midnight, PublishedAtParser.parseEpochMillis("2026/10/16"));
+    }
+
+    @Test
+    void unparseableValuesAreUnknown() {
+        for (String value : new String[] {null, "", "2 hours ago", "Oct 16, 2026", "2026-13-16", "2026-10-16T25:00Z",
+            "2026-10-16 09:00Z", "2026/10/16T09:00", "Tue, 16 Oct 2026 09:00:00 GMT"}) {
+            assertEquals(PublishedAtParser.UNKNOWN, PublishedAtParser.parseEpochMillis(value), value);
+        }
+    }
+}
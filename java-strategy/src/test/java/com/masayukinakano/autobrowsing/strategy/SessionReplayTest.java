@@ -0,0 +1,54 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SessionReplayTest {
+
+    @Test
+    void captureCutOffBySigtermStillReplays(@TempDir Path dir) throws IOException {
+        Path capture = dir.resolve("session.log.gz");
+        // close せずに終了したプロセスのキャプチャ（gzip トレーラなし）
+        SessionRecorder recorder = SessionRecorder.open(capture);
+        for (int i = 0; i < 3; i++) {
+            byte[] frame = ("{\"siteId\":\"bloomberg\",\"url\":\"https://www.bloomberg.com/markets\",\"links\":[{\"href\":"
+                + "\"https://www.bloomberg.com/news/articles/2026-10-16/story-" + i + "\",\"text\":\"Story " + i + "\"}]}")
+                .getBytes(StandardCharsets.UTF_8);
+            recorder.recordInbound(frame, 0, frame.length);
+        }
+
+        Path output = dir.resolve("links");
+        StrategyServer server;
+        try (LinkParquetWriter writer = LinkParquetWriter.open(output)) {
+            server = new StrategyServer(StrategyServer.createObjectMapper(), StrategyRegistry.defaultRegistry(), writer);
+            new SessionReplay(server, 0).run(capture);
+        }
+
+        long rows = LinkManifest.load(output.resolve("siteId=bloomberg"), "bloomberg").getFiles().stream()
+            .mapToLong(LinkManifest.Entry::getRowCount).sum();
+        assertEquals(3, rows);
+        recorder.close();
+    }
+
+    @Test
+    void onlyWholeQuitFramesAreSkipped(@TempDir Path dir) throws IOException {
+        Path capture = dir.resolve("session.log.gz");
+        try (SessionRecorder recorder = SessionRecorder.open(capture)) {
+            for (String frame : new String[] {"QUIT", "quit", "Quit", "qxyz", "quits"}) {
+                byte[] bytes = frame.getBytes(StandardCharsets.US_ASCII);
+                recorder.recordInbound(bytes, 0, bytes.length);
+            }
+        }
+
+        StrategyServer server = new StrategyServer(StrategyServer.createObjectMapper(), StrategyRegistry.defaultRegistry(), null);
+        SessionReplay replay = new SessionReplay(server, 0);
+        replay.run(capture);
+
+        assertEquals(2, replay.getErrorCount());
+    }
+}
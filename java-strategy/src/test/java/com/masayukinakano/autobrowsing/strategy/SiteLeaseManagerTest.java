@@ -0,0 +1,99 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SiteLeaseManagerTest {
+
+    private static final long TTL = 60_000L;
+
+    @Test
+    void secondNodeWaitsUntilReleaseAndGetsHigherToken(@TempDir Path dir) throws IOException {
+        SiteLeaseManager nodeA = new SiteLeaseManager(dir, "node-a", TTL);
+        SiteLeaseManager nodeB = new SiteLeaseManager(dir, "node-b", TTL);
+        try {
+            long tokenA = nodeA.acquire("bloomberg");
+            assertEquals(1, tokenA);
+            assertEquals(tokenA, nodeA.acquire("bloomberg"));
+            assertEquals(SiteLeaseManager.NO_LEASE, nodeB.acquire("bloomberg"));
+            assertEquals(1, nodeB.acquire("marketwatch"));
+
+            nodeA.close();
+            assertEquals(2, nodeB.acquire("bloomberg"));
+            assertTrue(nodeB.isHeld("bloomberg", 2));
+        } finally {
+            nodeA.close();
+            nodeB.close();
+        }
+    }
+
+    @Test
+    void sameNodeIdDoesNotStealLiveLease(@TempDir Path dir) throws IOException {
+        // 同じホストで動くサーバとバックフィルが同じ ID を名乗った場合
+        SiteLeaseManager server = new SiteLeaseManager(dir, "host-a", TTL);
+        SiteLeaseManager backfill = new SiteLeaseManager(dir, "host-a", TTL);
+        try {
+            assertEquals(1, server.acquire("bloomberg"));
+            assertEquals(SiteLeaseManager.NO_LEASE, backfill.acquire("bloomberg"));
+            assertTrue(server.isHeld("bloomberg", 1));
+            assertFalse(backfill.isHeld("bloomberg", 2));
+
+            server.close();
+            assertEquals(2, backfill.acquire("bloomberg"));
+        } finally {
+            server.close();
+            backfill.close();
+        }
+    }
+
+    @Test
+    void defaultNodeIdsDifferPerInstance(@TempDir Path dir) throws IOException {
+        SiteLeaseManager first = SiteLeaseManager.openDefault(dir);
+        SiteLeaseManager second = SiteLeaseManager.openDefault(dir);
+        try {
+            assertNotEquals(first.getNodeId(), second.getNodeId());
+            assertEquals(1, first.acquire("bloomberg"));
+            assertEquals(SiteLeaseManager.NO_LEASE, second.acquire("bloomberg"));
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    void expiredLeaseIsTakenOverAndOldHolderIsFenced(@TempDir Path dir) throws IOException {
+        Path leaseDir = Files.createDirectories(dir.resolve(SiteLeaseManager.DIRECTORY_NAME));
+        // 異常終了したノードが残したリース
+        long expired = Instant.now().toEpochMilli() - 1;
+        Files.writeString(leaseDir.resolve("bloomberg.lease"), "crashed-node\t7\t" + expired);
+
+        Path siteDir = dir.resolve("siteId=bloomberg");
+        LinkManifest stale = LinkManifest.load(siteDir, "bloomberg");
+        stale.fence("crashed-node", 7);
+        stale.save();
+
+        SiteLeaseManager node = new SiteLeaseManager(dir, "node-b", TTL);
+        try {
+            long token = node.acquire("bloomberg");
+            assertEquals(8, token);
+            LinkManifest current = LinkManifest.load(siteDir, "bloomberg");
+            current.fence(node.getNodeId(), token);
+            current.save();
+
+            assertThrows(IOException.class, stale::save);
+            assertEquals("node-b", LinkManifest.load(siteDir, "bloomberg").getOwner());
+        } finally {
+            node.close();
+        }
+    }
+}
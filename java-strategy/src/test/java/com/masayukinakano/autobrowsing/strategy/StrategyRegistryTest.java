@@ -29,4 +29,99 @@ class StrategyRegistryTest {
         LoadMoreResponse response = registry.handle(request);
         assertEquals(StrategyAction.PRESS, response.getAction());
     }
+
+    @Test
+    void watermarkStopsCrawlOnceCrossed() {
+        StrategyRegistry registry = StrategyRegistry.defaultRegistry();
+        FeedWatermark watermark = new FeedWatermark(
+            PublishedAtParser.parseEpochMillis("2026-10-16T09:00:00Z"), "https://www.bloomberg.com/news/a");
+        LoadMoreRequest request = new LoadMoreRequestBuilder()
+            .withSiteId("bloomberg")
+            .withLinks(List.of(
+                new LinkSnapshot("https://www.bloomberg.com/news/c", "C", "2026-10-16T11:00:00Z"),
+                new LinkSnapshot("https://www.bloomberg.com/news/a", "A", null),
+                new LinkSnapshot("https://www.bloomberg.com/news/b", "B", "2026-10-16T08:30:00+00:00")))
+            .build();
+        LoadMoreResponse response = registry.handle(request, watermark);
+        assertEquals(StrategyAction.NO_ACTION, response.getAction());
+    }
+
+    @Test
+    void watermarkStopsCrawlWhenEveryDatedLinkIsOlder() {
+        StrategyRegistry registry = StrategyRegistry.defaultRegistry();
+        FeedWatermark watermark = new FeedWatermark(
+            PublishedAtParser.parseEpochMillis("2026-10-16T09:00:00Z"), "https://www.bloomberg.com/news/removed");
+        LoadMoreRequest request = new LoadMoreRequestBuilder()
+            .withSiteId("bloomberg")
+            .withLinks(List.of(
+                new LinkSnapshot("https://www.bloomberg.com/news/b", "B", "2026-10-16T08:30:00Z"),
+                new LinkSnapshot("https://www.bloomberg.com/news/undated", "Undated", null),
+                new LinkSnapshot("https://www.bloomberg.com/news/a", "A", "2026-10-16T09:00:00Z"),
+                new LinkSnapshot("https://www.bloomberg.com/news/z", "Z", "2026-10-15T22:00:00Z")))
+            .build();
+        LoadMoreResponse response = registry.handle(request, watermark);
+        assertEquals(StrategyAction.NO_ACTION, response.getAction());
+    }
+
+    @Test
+    void singleDatedLinkDoesNotStopCrawl() {
+        StrategyRegistry registry = StrategyRegistry.defaultRegistry();
+        FeedWatermark watermark = new FeedWatermark(
+            PublishedAtParser.parseEpochMillis("2026-10-16T09:00:00Z"), "https://www.bloomberg.com/news/a");
+        // 日付が取れたのが古い関連記事リンク 1 件だけのページ
+        LoadMoreRequest request = new LoadMoreRequestBuilder()
+            .withSiteId("bloomberg")
+            .withLinks(List.of(
+                new LinkSnapshot("https://www.bloomberg.com/news/d", "D", null),
+                new LinkSnapshot("https://www.bloomberg.com/news/c", "C", null),
+                new LinkSnapshot("https://www.bloomberg.com/news/related", "Related", "2026-09-01T08:00:00Z")))
+            .build();
+        LoadMoreResponse response = registry.handle(request, watermark);
+        assertEquals(StrategyAction.SCROLL, response.getAction());
+    }
+
+    @Test
+    void watermarkSkipsStrayNewerLinks() {
+        FeedWatermark watermark = FeedWatermark.fromNewLinks(List.of(
+            new LinkSnapshot("https://www.bloomberg.com/news/pinned", "Pinned", "2026-10-18T23:00:00Z"),
+            new LinkSnapshot("https://www.bloomberg.com/news/a", "A", "2026-10-16T09:00:00Z"),
+            new LinkSnapshot("https://www.bloomberg.com/news/c", "C", "2026-10-16T11:00:00Z"),
+            new LinkSnapshot("https://www.bloomberg.com/news/undated", "Undated", null),
+            new LinkSnapshot("https://www.bloomberg.com/news/b", "B", "2026-10-16T10:00:00Z")));
+        assertEquals("https://www.bloomberg.com/news/b", watermark.getHref());
+
+        FeedWatermark single = FeedWatermark.fromNewLinks(List.of(
+            new LinkSnapshot("https://www.bloomberg.com/news/d", "D", "2026-10-16T12:00:00Z")));
+        assertEquals("https://www.bloomberg.com/news/d", single.getHref());
+    }
+
+    @Test
+    void strayOldLinkDoesNotStopCrawl() {
+        StrategyRegistry registry = StrategyRegistry.defaultRegistry();
+        FeedWatermark watermark = new FeedWatermark(
+            PublishedAtParser.parseEpochMillis("2026-10-16T09:00:00Z"), "https://www.bloomberg.com/news/a");
+        // 新着 2 件に「よく読まれている記事」の古いリンクが 1 件混じったページ
+        LoadMoreRequest request = new LoadMoreRequestBuilder()
+            .withSiteId("bloomberg")
+            .withLinks(List.of(
+                new LinkSnapshot("https://www.bloomberg.com/news/d", "D", "2026-10-16T12:00:00Z"),
+                new LinkSnapshot("https://www.bloomberg.com/news/c", "C", "2026-10-16T11:00:00Z"),
+                new LinkSnapshot("https://www.bloomberg.com/news/most-read", "Most read", "2026-09-01T08:00:00Z")))
+            .build();
+        LoadMoreResponse response = registry.handle(request, watermark);
+        assertEquals(StrategyAction.SCROLL, response.getAction());
+    }
+
+    @Test
+    void watermarkIgnoredWhilePageIsNewer() {
+        StrategyRegistry registry = StrategyRegistry.defaultRegistry();
+        FeedWatermark watermark = new FeedWatermark(
+            PublishedAtParser.parseEpochMillis("2026-10-16"), "https://www.bloomberg.com/news/a");
+        LoadMoreRequest request = new LoadMoreRequestBuilder()
+            .withSiteId("bloomberg")
+            .withLinks(List.of(new LinkSnapshot("https://www.bloomberg.com/news/c", "C", "2026-10-16 11:00")))
+            .build();
+        LoadMoreResponse response = registry.handle(request, watermark);
+        assertEquals(StrategyAction.SCROLL, response.getAction());
+    }
 }
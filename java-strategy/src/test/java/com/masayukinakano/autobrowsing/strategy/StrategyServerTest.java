@@ -0,0 +1,89 @@
+package com.masayukinakano.autobrowsing.strategy;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StrategyServerTest {
+
+    @Test
+    void framesAreSplitOnNewlinesAcrossReads() throws IOException {
+        StringBuilder input = new StringBuilder();
+        input.append("  \r\n");
+        input.append("{\"siteId\":\"demo-news\",\"visibleButtons\":[{\"title\":\"もっと見る\",\"role\":\"AXButton\"}]}\r\n");
+        input.append("{\"siteId\":\"unknown\",\"links\":[{\"href\":\"https://example.com/").append("a".repeat(200_000)).append("\"}]}\n");
+        input.append("not json\n");
+        input.append("QUIT\n");
+        input.append("{\"siteId\":\"ignored\"}\n");
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        StrategyServer server = new StrategyServer(StrategyServer.createObjectMapper(), StrategyRegistry.defaultRegistry(), null);
+        server.run(Channels.newChannel(new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8))),
+            Channels.newChannel(output));
+
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(5, lines.length);
+        assertTrue(lines[0].contains("\"hello\""));
+        assertTrue(lines[1].contains("\"PRESS\""));
+        assertTrue(lines[2].contains("\"SCROLL\""));
+        assertTrue(lines[3].contains("\"success\":false"));
+        assertTrue(lines[4].contains("\"shutdown\""));
+    }
+
+    @Test
+    void onlyStoreArticlePayloadsReachTheArticleStore(@TempDir Path dir) throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            input.append("{\"siteId\":\"demo-news\",\"url\":\"https://example.com/news\",\"pageHtml\":\"<html>feed ")
+                .append(i).append("</html>\"}\n");
+        }
+        input.append("{\"command\":\"storeArticle\",\"siteId\":\"demo-news\",")
+            .append("\"article\":{\"articleId\":\"a1\",\"contentType\":\"html\",\"content\":\"<html>article</html>\"}}\n");
+        input.append("QUIT\n");
+
+        ArticleBlobStore store = ArticleBlobStore.open(dir);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        StrategyServer server = new StrategyServer(StrategyServer.createObjectMapper(), StrategyRegistry.defaultRegistry(),
+            null, store, null);
+        server.run(Channels.newChannel(new ByteArrayInputStream(input.toString().getBytes(StandardCharsets.UTF_8))),
+            Channels.newChannel(output));
+
+        try (ArticleBlobStore reopened = ArticleBlobStore.open(dir)) {
+            List<String> stored = new ArrayList<>();
+            reopened.forEach("demo-news", (hash, content) -> stored.add(new String(content, StandardCharsets.UTF_8)));
+            assertEquals(List.of("<html>article</html>"), stored);
+        }
+    }
+
+    @Test
+    void leaseConflictIsReportedToTheClient(@TempDir Path dir) throws IOException {
+        SiteLeaseManager other = new SiteLeaseManager(dir, "node-a", 60_000L);
+        try {
+            other.acquire("bloomberg");
+            String input = "{\"siteId\":\"bloomberg\",\"url\":\"https://www.bloomberg.com/news\","
+                + "\"links\":[{\"href\":\"https://www.bloomberg.com/news/articles/2026-10-16/a\",\"text\":\"A\"}]}\nQUIT\n";
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            LinkParquetWriter writer = LinkParquetWriter.openShared(dir, new SiteLeaseManager(dir, "node-b", 60_000L));
+            StrategyServer server = new StrategyServer(StrategyServer.createObjectMapper(), StrategyRegistry.defaultRegistry(), writer);
+            server.run(Channels.newChannel(new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))),
+                Channels.newChannel(output));
+
+            String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+            assertTrue(lines[1].contains("\"success\":false"));
+            assertTrue(lines[1].contains("\"ERROR\""));
+            assertTrue(lines[1].contains("leased by node-a"));
+        } finally {
+            other.close();
+        }
+    }
+}
@@ -642,10 +642,14 @@ final class AppState: ObservableObject {
             guard !trimmed.isEmpty else { continue }
             let directoryURL = URL(fileURLWithPath: trimmed, isDirectory: true)
             guard let contents = try? fileManager.contentsOfDirectory(at: directoryURL, includingPropertiesForKeys: nil, options: [.skipsHiddenFiles]) else { continue }
-            for url in contents where url.pathExtension.lowercased() == "parquet" {
+            for url in contents {
                 let name = url.lastPathComponent.lowercased()
-                if name.contains("bloomberg") {
+                guard name.contains("bloomberg") else { continue }
+                if url.pathExtension.lowercased() == "parquet" {
                     found.insert(url.path)
+                } else if name.hasSuffix(".parquet.known") {
+                    // パーティション化後はフィード単位の .known だけがトップレベルに残る
+                    found.insert(url.deletingPathExtension().path)
                 }
             }
         }
@@ -1525,6 +1529,8 @@ final class AppState: ObservableObject {
             encoder.outputFormatting = [.prettyPrinted, .withoutEscapingSlashes]
             let encoded = try encoder.encode(article)
             try encoded.write(to: parsedURL, options: .atomic)
+            let parsedJSON = String(decoding: encoded, as: UTF8.self)
+            Task { await self.strategyClient.storeArticle(siteId: "bloomberg", articleId: savedArticle.articleId, contentType: "json", content: parsedJSON) }
 
             bloombergParsedArticle = article
             prependStatusMessage("Bloomberg 記事JSONを保存しました: \(parsedURL.path)")
@@ -1573,6 +1579,7 @@ final class AppState: ObservableObject {
             let fileURL = htmlDir.appendingPathComponent("\(articleId).html")
             try html.write(to: fileURL, atomically: true, encoding: .utf8)
             prependStatusMessage("Bloomberg プレビュー HTML を保存しました: \(fileURL.path)")
+            Task { await self.strategyClient.storeArticle(siteId: "bloomberg", articleId: articleId, contentType: "html", content: html) }
             return BloombergSavedArticle(htmlURL: fileURL, jsonDirectory: jsonDir, articleId: articleId, canonicalURL: canonical)
         } catch {
             Logger.shared.error("Bloomberg HTML の保存に失敗: \(error.localizedDescription)")
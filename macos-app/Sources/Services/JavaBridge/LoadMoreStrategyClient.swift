@@ -154,6 +154,24 @@ actor LoadMoreStrategyClient {
         }
     }
 
+    // 記事本文を戦略サーバーの記事ストアへ送る（重複排除・圧縮して保存される）
+    func storeArticle(siteId: String, articleId: String, contentType: String, content: String) async {
+        guard canUseBridge, !articleId.isEmpty, !content.isEmpty else { return }
+        do {
+            try await ensureRunning()
+            let article = StrategyArticlePayload(articleId: articleId, contentType: contentType, content: content)
+            let payload = StrategyRequestPayload(command: "storeArticle", siteId: siteId, article: article)
+            guard let response = try await sendPayload(payload) else { return }
+            if response.success {
+                Logger.shared.debug("記事を記事ストアへ保存しました: \(articleId).\(contentType) (\(response.blobId ?? "-"))")
+            } else {
+                Logger.shared.error("記事ストアへの保存に失敗: \(response.message ?? "Unknown error")")
+            }
+        } catch {
+            Logger.shared.debug("記事保存リクエストに失敗: \(error.localizedDescription)")
+        }
+    }
+
     private func instruction(from response: StrategyResponsePayload) throws -> AutomationInstruction {
         guard response.success else {
             throw LoadMoreStrategyBridgeError.strategyFailure(response.message ?? "Unknown error")
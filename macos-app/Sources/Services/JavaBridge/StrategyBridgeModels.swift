@@ -1,21 +1,31 @@
 import Foundation
 
 struct StrategyRequestPayload: Codable {
+    let command: String?
     let siteId: String
     let url: String?
     let visibleButtons: [StrategyButtonSnapshot]
     let links: [StrategyLinkSnapshot]
     let metadata: [String: String]?
+    let article: StrategyArticlePayload?
 
-    init(siteId: String, url: String? = nil, visibleButtons: [StrategyButtonSnapshot] = [], links: [StrategyLinkSnapshot] = [], metadata: [String: String]? = nil) {
+    init(command: String? = nil, siteId: String, url: String? = nil, visibleButtons: [StrategyButtonSnapshot] = [], links: [StrategyLinkSnapshot] = [], metadata: [String: String]? = nil, article: StrategyArticlePayload? = nil) {
+        self.command = command
         self.siteId = siteId
         self.url = url
         self.visibleButtons = visibleButtons
         self.links = links
         self.metadata = metadata
+        self.article = article
     }
 }
 
+struct StrategyArticlePayload: Codable {
+    let articleId: String
+    let contentType: String
+    let content: String
+}
+
 struct StrategyButtonSnapshot: Codable {
     let title: String?
     let role: String?
@@ -46,6 +56,7 @@ struct StrategyResponsePayload: Codable {
     let scrollDistance: Double?
     let waitSeconds: Double?
     let script: String?
+    let blobId: String?
 }
 
 enum StrategyActionPayload: String, Codable {
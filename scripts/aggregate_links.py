@@ -5,19 +5,27 @@ Example:
     $ python scripts/aggregate_links.py --base links-output
 
 This script keeps only the most recent record per URL and writes one Parquet
-file per site under ``<base>/aggregated`` by default.
+file per site under ``<base>/aggregated`` by default. Partitioned outputs
+(``siteId=<site>/date=<yyyy-MM-dd>/<feed>.parquet``) are discovered
+recursively; with ``--since``/``--until`` the per-site ``_manifest.json``
+catalogs are used to skip files whose time range cannot match, and the rows
+of the remaining files are filtered by ``publishedAtMillis`` (falling back to
+``timestampMillis`` for undated rows).
 """
 
 from __future__ import annotations
 
 import argparse
+import json
 import logging
 from collections import defaultdict
 from dataclasses import dataclass
+from datetime import datetime, timezone
 from pathlib import Path
 from typing import Iterable, Sequence
 
 import pandas as pd
+import pyarrow.parquet as pq
 
 Log = logging.getLogger(__name__)
 
@@ -25,6 +33,8 @@ Log = logging.getLogger(__name__)
 # to avoid loading unused data into memory.
 BASE_COLUMNS: tuple[str, ...] = ("siteId", "pageUrl", "href", "text")
 OPTIONAL_COLUMNS: tuple[str, ...] = ("publishedAt", "timestampMillis")
+MANIFEST_NAME = "_manifest.json"
+EPOCH = pd.Timestamp(0, tz="UTC")
 
 
 @dataclass
@@ -32,18 +42,94 @@ class AggregationStats:
     """Simple struct to report what happened during aggregation."""
 
     files_processed: int = 0
+    files_skipped: int = 0
     rows_read: int = 0
+    rows_outside_window: int = 0
     rows_written: int = 0
     sites_written: int = 0
 
 
 def find_parquet_files(base: Path) -> Iterable[Path]:
-    """Yield sorted parquet files under ``base``."""
+    """Yield sorted parquet files under ``base``, including partition directories."""
 
     if not base.exists():
         Log.warning("Base directory %s does not exist", base)
         return []
-    return sorted(p for p in base.glob("*.parquet") if p.is_file())
+    return sorted(
+        p for p in base.rglob("*.parquet")
+        if p.is_file() and "aggregated" not in p.relative_to(base).parts
+    )
+
+
+def parse_date_millis(raw: str | None, *, end_of_day: bool) -> int | None:
+    """Convert ``YYYY-MM-DD`` (UTC) or an ISO timestamp into epoch milliseconds."""
+
+    if not raw:
+        return None
+    value = datetime.fromisoformat(raw)
+    if value.tzinfo is None:
+        value = value.replace(tzinfo=timezone.utc)
+    millis = int(value.timestamp() * 1000)
+    if end_of_day and len(raw) == 10:
+        millis += 24 * 60 * 60 * 1000 - 1
+    return millis
+
+
+def _range_overlaps(low: int | None, high: int | None, since: int | None, until: int | None) -> bool:
+    if low is None or high is None:
+        return False
+    return (since is None or high >= since) and (until is None or low <= until)
+
+
+def manifest_excluded_files(base: Path, since: int | None, until: int | None) -> set[Path]:
+    """Return files listed in ``_manifest.json`` whose time range falls outside the window."""
+
+    excluded: set[Path] = set()
+    if since is None and until is None:
+        return excluded
+    for manifest_path in base.glob(f"siteId=*/{MANIFEST_NAME}"):
+        try:
+            manifest = json.loads(manifest_path.read_text(encoding="utf-8"))
+        except (OSError, ValueError) as exc:
+            Log.warning("Ignore unreadable manifest %s: %s", manifest_path, exc)
+            continue
+        for entry in manifest.get("files", []):
+            published = _range_overlaps(entry.get("minPublishedAt"), entry.get("maxPublishedAt"), since, until)
+            captured = entry.get("undatedRows", 0) > 0 and _range_overlaps(
+                entry.get("minTimestamp"), entry.get("maxTimestamp"), since, until
+            )
+            if not published and not captured:
+                excluded.add((manifest_path.parent / entry["path"]).resolve())
+    return excluded
+
+
+def row_time_millis(df: pd.DataFrame) -> pd.Series:
+    """Return each row's publication time in epoch ms, or the capture time when it is undated."""
+
+    result = pd.Series(float("nan"), index=df.index)
+    if "publishedAtMillis" in df.columns:
+        published = df["publishedAtMillis"]
+        if pd.api.types.is_datetime64_any_dtype(published):
+            result = (pd.to_datetime(published, utc=True) - EPOCH) / pd.Timedelta(milliseconds=1)
+        else:
+            result = pd.to_numeric(published, errors="coerce").astype(float)
+    if "timestampMillis" in df.columns:
+        result = result.fillna(pd.to_numeric(df["timestampMillis"], errors="coerce").astype(float))
+    return result
+
+
+def filter_window(df: pd.DataFrame, since: int | None, until: int | None) -> pd.DataFrame:
+    """Keep only rows whose time falls inside ``[since, until]``; rows without any time are dropped."""
+
+    if since is None and until is None:
+        return df
+    times = row_time_millis(df)
+    mask = times.notna()
+    if since is not None:
+        mask &= times >= since
+    if until is not None:
+        mask &= times <= until
+    return df[mask]
 
 
 def sanitize_site_name(raw: object) -> str:
@@ -54,10 +140,15 @@ def sanitize_site_name(raw: object) -> str:
 
 
 def read_parquet(path: Path, *, columns: Sequence[str]) -> pd.DataFrame | None:
-    """Read a parquet file safely, returning ``None`` on failure."""
+    """Read a parquet file safely, returning ``None`` on failure.
+
+    Only the requested columns present in the file schema are read, so older
+    files without e.g. ``publishedAtMillis`` are still aggregated.
+    """
 
     try:
-        df = pd.read_parquet(path, columns=list(columns))
+        available = set(pq.read_schema(path).names)
+        df = pd.read_parquet(path, columns=[col for col in columns if col in available])
     except FileNotFoundError:
         Log.warning("Parquet file vanished while processing: %s", path)
         return None
@@ -72,11 +163,25 @@ def read_parquet(path: Path, *, columns: Sequence[str]) -> pd.DataFrame | None:
     return df
 
 
-def aggregate_directory(base: Path, output: Path, *, keep_timestamp: bool, dry_run: bool) -> AggregationStats:
+def aggregate_directory(
+    base: Path,
+    output: Path,
+    *,
+    keep_timestamp: bool,
+    dry_run: bool,
+    since: int | None = None,
+    until: int | None = None,
+) -> AggregationStats:
     """Aggregate all parquet files under ``base`` and write per-site outputs."""
 
     stats = AggregationStats()
-    files = list(find_parquet_files(base))
+    excluded = manifest_excluded_files(base, since, until)
+    files = []
+    for path in find_parquet_files(base):
+        if path.resolve() in excluded:
+            stats.files_skipped += 1
+        else:
+            files.append(path)
     if not files:
         Log.info("No parquet files found in %s", base)
         return stats
@@ -85,6 +190,10 @@ def aggregate_directory(base: Path, output: Path, *, keep_timestamp: bool, dry_r
     if keep_timestamp:
         desired_columns.append("timestampMillis")
     desired_columns.extend(col for col in OPTIONAL_COLUMNS if col not in desired_columns)
+    if since is not None or until is not None:
+        # Legacy files lack this column; read_parquet drops it per file and
+        # row_time_millis then falls back to timestampMillis.
+        desired_columns.append("publishedAtMillis")
 
     site_frames: dict[object, list[pd.DataFrame]] = defaultdict(list)
     for path in files:
@@ -93,6 +202,11 @@ def aggregate_directory(base: Path, output: Path, *, keep_timestamp: bool, dry_r
         if df is None or df.empty:
             continue
         stats.rows_read += len(df)
+        in_window = filter_window(df, since, until)
+        stats.rows_outside_window += len(df) - len(in_window)
+        df = in_window
+        if df.empty:
+            continue
         for site_id, group in df.groupby("siteId", dropna=False, sort=False):
             site_frames[site_id].append(group)
 
@@ -137,6 +251,8 @@ def build_parser() -> argparse.ArgumentParser:
     parser.add_argument("--base", type=Path, default=Path("links-output"), help="Input directory containing parquet files.")
     parser.add_argument("--output", type=Path, help="Output directory (defaults to <base>/aggregated).")
     parser.add_argument("--keep-timestamp", action="store_true", help="Retain the timestampMillis column when present.")
+    parser.add_argument("--since", help="Only keep rows published (or, if undated, captured) at or after this UTC date/time.")
+    parser.add_argument("--until", help="Only keep rows published (or, if undated, captured) up to this UTC date/time.")
     parser.add_argument("--dry-run", action="store_true", help="Scan and report without writing output files.")
     parser.add_argument("--verbose", action="store_true", help="Enable verbose logging.")
     return parser
@@ -157,11 +273,21 @@ def main() -> None:
     base = args.base
     output = args.output or (base / "aggregated")
 
-    stats = aggregate_directory(base, output, keep_timestamp=args.keep_timestamp, dry_run=args.dry_run)
+    stats = aggregate_directory(
+        base,
+        output,
+        keep_timestamp=args.keep_timestamp,
+        dry_run=args.dry_run,
+        since=parse_date_millis(args.since, end_of_day=False),
+        until=parse_date_millis(args.until, end_of_day=True),
+    )
     Log.info(
-        "Processed %d file(s), read %d row(s), wrote %d row(s) across %d site(s)%s",
+        "Processed %d file(s) (%d skipped by manifest), read %d row(s) (%d outside --since/--until),"
+        " wrote %d row(s) across %d site(s)%s",
         stats.files_processed,
+        stats.files_skipped,
         stats.rows_read,
+        stats.rows_outside_window,
         stats.rows_written,
         stats.sites_written,
         " [dry-run]" if args.dry_run else "",